@@ -0,0 +1,56 @@
+package io.liftbridge;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures per-message partitioning cost with many publishing threads sharing one partitioner. Throughput should scale
+ * with the thread count since no partitioner takes a lock and the counters are striped per thread, so run it at
+ * several counts, for example {@code ./gradlew jmh -PjmhThreads=1} and then 2, 4 and 8, on a machine with at least as
+ * many cores. Does not require a broker.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PartitionerBenchmark {
+
+    private static final String STREAM = "foo";
+
+    private final MessageOptions opts = new MessageOptions();
+    private final byte[] key = "customer-12345".getBytes();
+    private final RoundRobinPartitioner roundRobin = new RoundRobinPartitioner();
+    private final StickyPartitioner sticky = new StickyPartitioner();
+    private final KeyHashPartitioner keyHash = new KeyHashPartitioner();
+    private Metadata metadata;
+
+    @Setup
+    public void setup() {
+        Map<Integer, PartitionInfo> partitions = new HashMap<>();
+        for (int i = 0; i < 32; i++) {
+            partitions.put(i, new PartitionInfo(i, null, new HashSet<>(), new HashSet<>()));
+        }
+        Map<String, StreamInfo> streams = new HashMap<>();
+        streams.put(STREAM, new StreamInfo(STREAM, STREAM, partitions));
+        metadata = new Metadata(new HashMap<>(), streams);
+    }
+
+    @Benchmark
+    public int roundRobin() {
+        return roundRobin.partition(STREAM, null, null, metadata, opts);
+    }
+
+    @Benchmark
+    public int sticky() {
+        return sticky.partition(STREAM, null, null, metadata, opts);
+    }
+
+    @Benchmark
+    public int keyHash() {
+        return keyHash.partition(STREAM, key, null, metadata, opts);
+    }
+
+}
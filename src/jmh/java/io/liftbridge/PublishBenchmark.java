@@ -0,0 +1,59 @@
+package io.liftbridge;
+
+import io.liftbridge.exceptions.DeadlineExceededException;
+import io.liftbridge.exceptions.NoSuchStreamException;
+import io.liftbridge.exceptions.StreamExistsException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares publish throughput of 100-byte messages sent one at a time with {@link Client#publish} and sent
+ * concurrently with {@link Client#publishAsync}. Requires a broker listening on localhost:9292.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PublishBenchmark {
+
+    private static final int MESSAGES = 1000;
+
+    private final byte[] payload = new byte[100];
+    private final MessageOptions msgOpts = new MessageOptions().setAckDeadline(5, TimeUnit.SECONDS);
+
+    private Client client;
+    private String streamName;
+
+    @Setup
+    public void setup() throws StreamExistsException {
+        client = Client.Builder.create("localhost:9292").build();
+        streamName = "bench" + System.nanoTime();
+        client.createStream(streamName, new StreamOptions());
+    }
+
+    @TearDown
+    public void tearDown() throws NoSuchStreamException {
+        client.deleteStream(streamName);
+        client.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void publish() throws DeadlineExceededException {
+        for (int i = 0; i < MESSAGES; i++) {
+            client.publish(streamName, payload, msgOpts);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public void publishAsync() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[MESSAGES];
+        for (int i = 0; i < MESSAGES; i++) {
+            futures[i] = client.publishAsync(streamName, payload, msgOpts);
+        }
+        CompletableFuture.allOf(futures).join();
+    }
+
+}
@@ -1,10 +1,13 @@
 package io.liftbridge;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import io.grpc.Context;
 import io.grpc.ManagedChannel;
 import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
 import io.grpc.stub.StreamObserver;
 import io.liftbridge.exceptions.*;
 import io.liftbridge.proto.APIGrpc;
@@ -13,8 +16,9 @@ import io.liftbridge.proto.APIGrpc.APIStub;
 import io.liftbridge.proto.Api;
 
 import java.util.Map;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * {@code APIClient} is a low-level API in which the user must manage the gRPC channel. This is for communicating with a
@@ -38,6 +42,17 @@ class APIClient {
         return blockingStub.fetchMetadata(req);
     }
 
+    /**
+     * Fetches the brokers and the metadata of the given streams, or of all streams if none are given. Will block until
+     * response is received or the timeout passes, which fails with a {@code DEADLINE_EXCEEDED} status. Streams the
+     * cluster doesn't know are returned with an {@code UNKNOWN_STREAM} error.
+     */
+    public Api.FetchMetadataResponse fetchMetadata(Iterable<String> streams, long timeout, TimeUnit unit)
+            throws StatusRuntimeException {
+        Api.FetchMetadataRequest req = Api.FetchMetadataRequest.newBuilder().addAllStreams(streams).build();
+        return blockingStub.withDeadlineAfter(timeout, unit).fetchMetadata(req);
+    }
+
     /**
      * Creates a stream with the given options. Will block until response is received.
      */
@@ -66,35 +81,83 @@ class APIClient {
      */
     public Subscription subscribe(String stream, SubscriptionOptions opts, StreamObserver<Api.Message> msgHandler)
             throws NoSuchPartitionException {
+        return await(subscribeAsync(stream, opts, msgHandler));
+    }
+
+    /**
+     * Creates an ephemeral subscription for the given stream without blocking. The returned future completes once the
+     * server has acknowledged the subscription, or fails with a {@link NoSuchPartitionException} when the stream or
+     * partition doesn't exist or with the {@link StatusRuntimeException} the subscription failed with.
+     *
+     * @param stream     the stream to subscribe to
+     * @param opts       {@link SubscriptionOptions} for configuring the subscription
+     * @param msgHandler {@link StreamObserver} for handling messages on the stream
+     * @return future {@link Subscription} which can be used to unsubscribe
+     */
+    public CompletableFuture<Subscription> subscribeAsync(String stream, SubscriptionOptions opts,
+                                                          StreamObserver<Api.Message> msgHandler) {
+        FlowController flow = FlowController.create(opts);
+        if (flow == null) {
+            return subscribeAsync(stream, opts, msgHandler, null);
+        }
+        return subscribeAsync(stream, opts, new StreamObserver<Api.Message>() {
+            @Override
+            public void onNext(Api.Message message) {
+                msgHandler.onNext(message);
+                flow.consumed(message.getSerializedSize());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                msgHandler.onError(t);
+            }
 
+            @Override
+            public void onCompleted() {
+                msgHandler.onCompleted();
+            }
+        }, flow);
+    }
+
+    /**
+     * Creates a subscription whose inbound flow is controlled by the given {@link FlowController}, if any. The
+     * handler must call {@link FlowController#consumed} with each message's serialized size once it is done with
+     * the message.
+     */
+    CompletableFuture<Subscription> subscribeAsync(String stream, SubscriptionOptions opts,
+                                                   StreamObserver<Api.Message> msgHandler, FlowController flow) {
         Context.CancellableContext ctx = Context.current().withCancellation();
-        AtomicBoolean gotHandshake = new AtomicBoolean();
-        SynchronousQueue<MaybeThrowable> handshake = new SynchronousQueue<>();
+        CompletableFuture<Subscription> handshake = new CompletableFuture<>();
+
+        ctx.run(() -> asyncStub.subscribe(opts.toProto(stream),
+                new ClientResponseObserver<Api.SubscribeRequest, Api.Message>() {
+                    public void beforeStart(ClientCallStreamObserver<Api.SubscribeRequest> requestStream) {
+                        if (flow != null) {
+                            flow.start(requestStream);
+                        }
+                    }
 
-        ctx.run(() -> asyncStub.subscribe(opts.toProto(stream), new StreamObserver<Api.Message>() {
                     public void onNext(Api.Message message) {
                         // On initial subscribe, the server will either send an empty message, indicating the
                         // subscription was successfully created, or an error.
-                        if (!gotHandshake.get()) {
-                            gotHandshake.set(true);
-                            try {
-                                handshake.put(MaybeThrowable.isNull());
-                            } catch (InterruptedException e) {
-                                e.printStackTrace();
+                        if (!handshake.isDone()) {
+                            if (flow != null) {
+                                flow.handshake();
                             }
+                            handshake.complete(Subscription.fromGrpc(ctx));
                             return;
                         }
+                        if (flow != null) {
+                            flow.received(message.getSerializedSize());
+                        }
                         msgHandler.onNext(message);
                     }
 
                     public void onError(Throwable t) {
-                        if (!gotHandshake.get()) {
-                            gotHandshake.set(true);
-                            try {
-                                handshake.put(MaybeThrowable.notNull(t));
-                            } catch (InterruptedException e) {
-                                e.printStackTrace();
-                            }
+                        if (!handshake.isDone()) {
+                            // The error fails the subscription future, the subscription never started.
+                            handshake.completeExceptionally(subscribeException(t));
+                            return;
                         }
                         msgHandler.onError(t);
                     }
@@ -105,72 +168,199 @@ class APIClient {
                 }
         ));
 
+        return handshake;
+    }
+
+    /**
+     * Maps an error received instead of the subscription handshake to the exception the subscription fails with.
+     */
+    private static Throwable subscribeException(Throwable t) {
+        if (!(t instanceof StatusRuntimeException)) {
+            return new StatusRuntimeException(Status.fromThrowable(t));
+        }
+        StatusRuntimeException e = (StatusRuntimeException) t;
+        if (e.getStatus().getCode() == Status.Code.NOT_FOUND) {
+            return new NoSuchPartitionException(e);
+        }
+        return e;
+    }
+
+    /**
+     * Waits for a subscription to be created. If interrupted, the subscription is closed once created and the
+     * interrupt is reported as a cancelled {@link StatusRuntimeException}.
+     *
+     * @param future future {@link Subscription}
+     * @return {@code Subscription}
+     * @throws NoSuchPartitionException when the stream or partition being subscribed to doesn't exist
+     */
+    static Subscription await(CompletableFuture<Subscription> future) throws NoSuchPartitionException {
         try {
-            Throwable t = handshake.take().maybe();
-            if (t != null) {
-                if (!(t instanceof StatusRuntimeException)) {
-                    throw new StatusRuntimeException(Status.fromThrowable(t));
-                }
-                StatusRuntimeException e = (StatusRuntimeException) t;
-                if (e.getStatus().getCode() == Status.Code.NOT_FOUND) {
-                    throw new NoSuchPartitionException(e);
-                }
-                throw e;
-            }
+            return future.get();
         } catch (InterruptedException e) {
-            e.printStackTrace();
+            future.thenAccept(Subscription::unsubscribe);
+            Thread.currentThread().interrupt();
+            throw new StatusRuntimeException(Status.CANCELLED.withDescription("interrupted while subscribing")
+                    .withCause(e));
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof NoSuchPartitionException) {
+                throw (NoSuchPartitionException) t;
+            }
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            throw new StatusRuntimeException(Status.fromThrowable(t));
         }
-        return Subscription.fromGrpc(ctx);
     }
 
     /**
      * Publishes a new message to a Liftbridge stream.
      */
     public Api.PublishResponse publish(String stream, byte[] payload, MessageOptions opts) throws StatusRuntimeException {
+        return publish(stream, partition(stream, payload, null, opts), payload, opts);
+    }
+
+    /**
+     * Publishes a new message to the given Liftbridge stream partition. Any partition or {@link Partitioner} set on
+     * the {@code MessageOptions} is ignored.
+     */
+    public Api.PublishResponse publish(String stream, int partition, byte[] payload, MessageOptions opts)
+            throws StatusRuntimeException {
+        return publish(publishRequest(stream, partition, payload, opts), opts);
+    }
+
+    /**
+     * Publishes a prepared request. Only the ack deadline is read from the {@code MessageOptions}.
+     */
+    Api.PublishResponse publish(Api.PublishRequest request, MessageOptions opts) throws StatusRuntimeException {
+        APIBlockingStub stub = blockingStub;
+        if (opts.getAckDeadlineDuration() > 0) {
+            stub = stub.withDeadlineAfter(opts.getAckDeadlineDuration(), opts.getAckDeadlineTimeUnit());
+        }
+
+        return stub.publish(request);
+    }
+
+    /**
+     * Publishes a new message to a Liftbridge stream without blocking. The returned future is completed with the
+     * response or failed with the {@link StatusRuntimeException} returned by the server.
+     */
+    public CompletableFuture<Api.PublishResponse> publishAsync(String stream, byte[] payload, MessageOptions opts) {
+        return publishAsync(stream, partition(stream, payload, null, opts), payload, opts);
+    }
+
+    /**
+     * Publishes a new message to the given Liftbridge stream partition without blocking. Any partition or
+     * {@link Partitioner} set on the {@code MessageOptions} is ignored.
+     */
+    public CompletableFuture<Api.PublishResponse> publishAsync(String stream, int partition, byte[] payload,
+                                                               MessageOptions opts) {
+        return publishAsync(publishRequest(stream, partition, payload, opts), opts);
+    }
+
+    /**
+     * Publishes a prepared request without blocking. Only the ack deadline is read from the {@code MessageOptions}.
+     */
+    CompletableFuture<Api.PublishResponse> publishAsync(Api.PublishRequest request, MessageOptions opts) {
+        APIStub stub = asyncStub;
+        if (opts.getAckDeadlineDuration() > 0) {
+            stub = stub.withDeadlineAfter(opts.getAckDeadlineDuration(), opts.getAckDeadlineTimeUnit());
+        }
+
+        CompletableFuture<Api.PublishResponse> future = new CompletableFuture<>();
+        stub.publish(request, new FutureObserver<>(future));
+        return future;
+    }
+
+    /**
+     * Publishes a new message to a NATS subject.
+     */
+    public Api.PublishToSubjectResponse publishToSubject(String subject, byte[] payload, MessageOptions opts) throws StatusRuntimeException {
+        APIBlockingStub stub = blockingStub;
+        if (opts.getAckDeadlineDuration() > 0) {
+            stub = stub.withDeadlineAfter(opts.getAckDeadlineDuration(), opts.getAckDeadlineTimeUnit());
+        }
+
+        return stub.publishToSubject(publishToSubjectRequest(subject, payload, opts));
+    }
+
+    /**
+     * Publishes a new message to a NATS subject without blocking. The returned future is completed with the response
+     * or failed with the {@link StatusRuntimeException} returned by the server.
+     */
+    public CompletableFuture<Api.PublishToSubjectResponse> publishToSubjectAsync(String subject, byte[] payload,
+                                                                                MessageOptions opts) {
+        APIStub stub = asyncStub;
+        if (opts.getAckDeadlineDuration() > 0) {
+            stub = stub.withDeadlineAfter(opts.getAckDeadlineDuration(), opts.getAckDeadlineTimeUnit());
+        }
+
+        CompletableFuture<Api.PublishToSubjectResponse> future = new CompletableFuture<>();
+        stub.publishToSubject(publishToSubjectRequest(subject, payload, opts), new FutureObserver<>(future));
+        return future;
+    }
+
+    /**
+     * Returns the partition set on the {@code MessageOptions} or, if there is none, the one selected by its
+     * {@link Partitioner}. The partitioner is given the metadata, if known.
+     */
+    static int partition(String stream, byte[] payload, Metadata metadata, MessageOptions opts) {
         Integer partition = opts.getPartition();
         if (partition == null) {
-            partition = opts.getPartitioner().partition(stream, opts.getKey(), payload, opts);
+            partition = opts.getPartitioner().partition(stream, opts.getKey(), payload, metadata, opts);
         }
+        return partition;
+    }
+
+    /**
+     * Builds a publish request, copying the payload, key and header values so the caller may reuse them right away.
+     */
+    static Api.PublishRequest publishRequest(String stream, int partition, byte[] payload, MessageOptions opts) {
+        ByteString value = payload == null ? null : ByteString.copyFrom(payload);
+        return publishRequest(stream, partition, value, opts, opts.getCorrelationId(), false);
+    }
 
+    /**
+     * Builds a publish request with the given value and correlation id. If {@code wrap} is set, the key and header
+     * values are wrapped instead of copied, so they must not be modified until the request has been sent.
+     */
+    static Api.PublishRequest publishRequest(String stream, int partition, ByteString value, MessageOptions opts,
+                                             String correlationId, boolean wrap) {
         Api.PublishRequest.Builder requestBuilder = Api.PublishRequest.newBuilder()
                 .setStream(stream)
                 .setPartition(partition)
                 .setAckPolicy(opts.getAckPolicy().toProto());
-        if (payload != null) {
-            requestBuilder.setValue(ByteString.copyFrom(payload));
+        if (value != null) {
+            requestBuilder.setValue(value);
         }
         if (opts.getAckInbox() != null) {
             requestBuilder.setAckInbox(opts.getAckInbox());
         }
-        if (opts.getCorrelationId() != null) {
-            requestBuilder.setCorrelationId(opts.getCorrelationId());
+        if (correlationId != null) {
+            requestBuilder.setCorrelationId(correlationId);
         }
 
         byte[] msgKey = opts.getKey();
         if (msgKey != null) {
-            requestBuilder.setKey(ByteString.copyFrom(msgKey));
+            requestBuilder.setKey(bytes(msgKey, wrap));
         }
 
         Map<String, byte[]> headers = opts.getHeaders();
         if (headers != null) {
             for (Map.Entry<String, byte[]> header : headers.entrySet()) {
                 requestBuilder.putHeaders(
-                        header.getKey(), ByteString.copyFrom(header.getValue()));
+                        header.getKey(), bytes(header.getValue(), wrap));
             }
         }
 
-        APIBlockingStub stub = blockingStub;
-        if (opts.getAckDeadlineDuration() > 0) {
-            stub = stub.withDeadlineAfter(opts.getAckDeadlineDuration(), opts.getAckDeadlineTimeUnit());
-        }
-
-        return stub.publish(requestBuilder.build());
+        return requestBuilder.build();
     }
 
-    /**
-     * Publishes a new message to a NATS subject.
-     */
-    public Api.PublishToSubjectResponse publishToSubject(String subject, byte[] payload, MessageOptions opts) throws StatusRuntimeException {
+    private static Api.PublishToSubjectRequest publishToSubjectRequest(String subject, byte[] payload,
+                                                                       MessageOptions opts) {
         Api.PublishToSubjectRequest.Builder requestBuilder = Api.PublishToSubjectRequest.newBuilder()
                 .setSubject(subject)
                 .setAckPolicy(opts.getAckPolicy().toProto());
@@ -197,12 +387,11 @@ class APIClient {
             }
         }
 
-        APIBlockingStub stub = blockingStub;
-        if (opts.getAckDeadlineDuration() > 0) {
-            stub = stub.withDeadlineAfter(opts.getAckDeadlineDuration(), opts.getAckDeadlineTimeUnit());
-        }
+        return requestBuilder.build();
+    }
 
-        return stub.publishToSubject(requestBuilder.build());
+    private static ByteString bytes(byte[] bytes, boolean wrap) {
+        return wrap ? UnsafeByteOperations.unsafeWrap(bytes) : ByteString.copyFrom(bytes);
     }
 
     @Override
@@ -231,24 +420,29 @@ class APIClient {
         return this.grpcChannel.hashCode();
     }
 
-    private static class MaybeThrowable {
+    /**
+     * Completes a {@link CompletableFuture} with the result of a unary call.
+     */
+    private static class FutureObserver<T> implements StreamObserver<T> {
 
-        private final Throwable t;
+        private final CompletableFuture<T> future;
 
-        private MaybeThrowable(Throwable t) {
-            this.t = t;
+        private FutureObserver(CompletableFuture<T> future) {
+            this.future = future;
         }
 
-        private static MaybeThrowable isNull() {
-            return new MaybeThrowable(null);
+        @Override
+        public void onNext(T value) {
+            future.complete(value);
         }
 
-        private static MaybeThrowable notNull(Throwable t) {
-            return new MaybeThrowable(t);
+        @Override
+        public void onError(Throwable t) {
+            future.completeExceptionally(t);
         }
 
-        private Throwable maybe() {
-            return t;
+        @Override
+        public void onCompleted() {
         }
 
     }
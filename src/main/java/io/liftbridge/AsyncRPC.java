@@ -0,0 +1,9 @@
+package io.liftbridge;
+
+import java.util.concurrent.CompletableFuture;
+
+interface AsyncRPC<T> {
+
+    CompletableFuture<T> execute(ManagedAPIClient client);
+
+}
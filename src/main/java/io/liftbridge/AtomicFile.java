@@ -0,0 +1,73 @@
+package io.liftbridge;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * File which is replaced atomically: its contents are written to a temporary file next to it, which is synced to
+ * disk and then renamed over it. Readers therefore see either the previous or the new contents in full, also after a
+ * crash. Writes must not overlap.
+ */
+class AtomicFile {
+
+    private final Path path;
+    private final Path tempPath;
+
+    /**
+     * @param path file to replace, created on the first write if it doesn't exist
+     */
+    AtomicFile(Path path) {
+        this.path = path.toAbsolutePath();
+        this.tempPath = this.path.resolveSibling(this.path.getFileName() + ".tmp");
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * Replaces the file with the contents written by the given writer.
+     *
+     * @param writer {@link Writer} for the new contents
+     * @throws IOException if the contents could not be written or the file could not be replaced, in which case the
+     *                     previous contents are left in place
+     */
+    void write(Writer writer) throws IOException {
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            writer.writeTo(out);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+    }
+
+    /**
+     * Syncs the directory so the rename itself survives a crash. Not every platform allows opening a directory, in
+     * which case the rename is left to the file system.
+     */
+    private void syncDirectory() {
+        try (FileChannel dir = FileChannel.open(path.getParent(), StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Best effort.
+        }
+    }
+
+    /**
+     * Writes the contents of an {@link AtomicFile}.
+     */
+    interface Writer {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+}
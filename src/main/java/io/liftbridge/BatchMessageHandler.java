@@ -0,0 +1,29 @@
+package io.liftbridge;
+
+import java.util.List;
+
+/**
+ * {@code BatchMessageHandler} is the callback invoked by {@link Client#subscribe(String, SubscriptionOptions,
+ * BatchOptions, BatchMessageHandler)} with batches of messages received on the specified stream partition. Batches are
+ * closed as configured by {@link BatchOptions}, which makes it possible to amortize downstream work such as database
+ * inserts over many messages. If {@link BatchMessageHandler#onError} is called, no more messages will be received.
+ */
+public interface BatchMessageHandler {
+
+    /**
+     * Called with a batch of received messages, in offset order. The list is reused for later batches once this
+     * returns, so it must be copied to retain the messages.
+     *
+     * @param msgs received messages
+     */
+    void onMessages(List<Message> msgs);
+
+    /**
+     * Called when an error has occurred on the stream, after the messages received before it have been handled. If
+     * this is called, no more messages will be received.
+     *
+     * @param t subscription error
+     */
+    void onError(Throwable t);
+
+}
@@ -0,0 +1,109 @@
+package io.liftbridge;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code BatchOptions} are used to configure when a batch of messages consumed with a {@link BatchMessageHandler} is
+ * closed. A batch is closed as soon as any of the configured limits is reached.
+ */
+public class BatchOptions {
+
+    private static final int DEFAULT_MAX_MESSAGES = 500;
+    private static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+    private static final long DEFAULT_MAX_WAIT_MILLIS = 5;
+
+    private int maxMessages = DEFAULT_MAX_MESSAGES;
+    private int maxBytes = DEFAULT_MAX_BYTES;
+    private long maxWaitDuration = DEFAULT_MAX_WAIT_MILLIS;
+    private TimeUnit maxWaitTimeUnit = TimeUnit.MILLISECONDS;
+
+    public BatchOptions() {
+    }
+
+    /**
+     * Returns the maximum number of messages in a batch.
+     *
+     * @return maximum batch message count
+     */
+    public int getMaxMessages() {
+        return maxMessages;
+    }
+
+    /**
+     * Sets the maximum number of messages in a batch. Defaults to 500.
+     *
+     * @param maxMessages maximum batch message count
+     * @return {@code this} to allow for chaining
+     */
+    public BatchOptions setMaxMessages(int maxMessages) {
+        if (maxMessages < 1) {
+            throw new IllegalArgumentException("maxMessages must be positive");
+        }
+        this.maxMessages = maxMessages;
+        return this;
+    }
+
+    /**
+     * Returns the maximum size of a batch in bytes, counting message keys, values and header values.
+     *
+     * @return maximum batch size in bytes
+     */
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the maximum size of a batch in bytes, counting message keys, values and header values. A single message
+     * larger than this limit forms a batch of its own. Defaults to 1MB.
+     *
+     * @param maxBytes maximum batch size in bytes
+     * @return {@code this} to allow for chaining
+     */
+    public BatchOptions setMaxBytes(int maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * Returns the maximum time a batch is kept open after its first message was added.
+     *
+     * @return maximum wait duration
+     */
+    public long getMaxWaitDuration() {
+        return maxWaitDuration;
+    }
+
+    /**
+     * Returns the time unit for the maximum wait duration.
+     *
+     * @return time unit of duration
+     */
+    public TimeUnit getMaxWaitTimeUnit() {
+        return maxWaitTimeUnit;
+    }
+
+    /**
+     * Sets the maximum time a batch is kept open after its first message was added. A zero duration closes every
+     * batch immediately, which disables batching. Defaults to 5 milliseconds.
+     *
+     * @param maxWaitDuration maximum wait duration
+     * @param maxWaitTimeUnit time unit of duration
+     * @return {@code this} to allow for chaining
+     */
+    public BatchOptions setMaxWait(long maxWaitDuration, TimeUnit maxWaitTimeUnit) {
+        if (maxWaitDuration < 0) {
+            throw new IllegalArgumentException("maxWaitDuration must not be negative");
+        }
+        this.maxWaitDuration = maxWaitDuration;
+        this.maxWaitTimeUnit = maxWaitTimeUnit;
+        return this;
+    }
+
+    long getMaxWaitNanos() {
+        return maxWaitTimeUnit.toNanos(maxWaitDuration);
+    }
+
+}
@@ -1,15 +1,29 @@
 package io.liftbridge;
 
 
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
 import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import io.liftbridge.exceptions.*;
 import io.liftbridge.proto.Api;
 
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 
 /**
  * {@code Client} is the primary API component for interacting with a Liftbridge cluster. Use {@link Client.Builder} to
@@ -17,11 +31,26 @@ import java.util.*;
  */
 public class Client {
 
+    private static final int MAX_RESUBSCRIBE_ATTEMPTS = 10;
+    private static final long RESUBSCRIBE_BACKOFF_MILLIS = 50;
+    private static final long RESUBSCRIBE_MAX_BACKOFF_MILLIS = 2000;
+    private static final int MAX_LEADER_RPC_ATTEMPTS = 10;
+    private static final long LEADER_RPC_BACKOFF_MILLIS = 20;
+    private static final long LEADER_RPC_MAX_BACKOFF_MILLIS = 1000;
+
     private ManagedAPIClient conn;
     private boolean closed;
     private MetadataCache metadataCache;
-    private final Map<String, ConnectionPool> pools = new HashMap<>();
+    // Read without locking on the publish and subscribe paths, only created under the client's lock.
+    private final Map<String, ConnectionPool> pools = new ConcurrentHashMap<>();
     private final ClientOptions opts;
+    private final HashedWheelTimer timer =
+            new HashedWheelTimer("liftbridge-client-timer", 10, TimeUnit.MILLISECONDS, 512);
+    // Partition subscriptions which haven't been unsubscribed or given up, for moving them when leaders change.
+    private final Set<PartitionSubscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final List<MetadataListener> metadataListeners = new CopyOnWriteArrayList<>();
+    // Handles metadata changes one at a time, in the order the metadata was updated.
+    private final Executor metadataEvents = new SerializedExecutor(ForkJoinPool.commonPool());
 
     private Client(ManagedAPIClient client, ClientOptions opts) {
         this.conn = client;
@@ -42,6 +71,10 @@ public class Client {
         for (ConnectionPool pool : pools.values()) {
             pool.close();
         }
+        if (metadataCache != null) {
+            metadataCache.close();
+        }
+        timer.stop();
         getAPIClient().close();
         closed = true;
     }
@@ -95,10 +128,40 @@ public class Client {
         }
     }
 
+    /**
+     * Registers a listener for changes to the cluster metadata, such as partition leader and ISR changes. It is
+     * called after each metadata refresh which changed something, as described in {@link MetadataListener}. Regular
+     * background refreshes, enabled with {@link Builder#withMetadataRefreshInterval}, make sure changes are noticed
+     * even while nothing fails.
+     * <p>
+     * Regardless of listeners, the client moves subscriptions whose partition leader changed, or whose ISR replica
+     * left the ISR, to a broker which serves the partition now, and connects to new leaders ahead of the next
+     * publish.
+     *
+     * @param listener {@link MetadataListener} to register
+     */
+    public void addMetadataListener(MetadataListener listener) {
+        metadataListeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener registered with {@link #addMetadataListener}.
+     *
+     * @param listener {@link MetadataListener} to unregister
+     */
+    public void removeMetadataListener(MetadataListener listener) {
+        metadataListeners.remove(listener);
+    }
+
     /**
      * Creates an ephemeral subscription for the given stream. It begins receiving messages starting at the configured
      * position and waits for new messages when it reaches the end of the stream. The default start position is the end
      * of the stream.
+     * <p>
+     * If the subscription's broker becomes unavailable or loses leadership of the partition, the client refreshes its
+     * metadata and resubscribes to the partition's current leader, or a random ISR replica if
+     * {@link SubscriptionOptions#readIsrReplica()} is set, resuming after the last received message. Resubscribing is
+     * retried with bounded backoff, and the handler's {@link MessageHandler#onError} is only called once it gives up.
      *
      * @param stream     the stream to subscribe to
      * @param opts       {@link SubscriptionOptions} for configuring the subscription
@@ -108,62 +171,490 @@ public class Client {
      */
     public Subscription subscribe(String stream, SubscriptionOptions opts, MessageHandler msgHandler)
             throws NoSuchPartitionException {
-        NoSuchPartitionException ex = null;
-        for (int i = 0; i < 5; i++) {
-            PoolAndAddr poolAndAddr;
+        return APIClient.await(subscribeAsync(stream, opts, msgHandler));
+    }
+
+    /**
+     * Creates an ephemeral subscription for the given stream without blocking, which allows many subscriptions to be
+     * opened at once. The subscription behaves as described in {@link #subscribe(String, SubscriptionOptions,
+     * MessageHandler)}. The returned future completes once the broker has acknowledged the subscription, or fails
+     * with a {@link NoSuchPartitionException} when the stream or partition doesn't exist.
+     *
+     * @param stream     the stream to subscribe to
+     * @param opts       {@link SubscriptionOptions} for configuring the subscription
+     * @param msgHandler {@link MessageHandler} for handling messages on the stream
+     * @return future {@link Subscription} which can be used to unsubscribe
+     */
+    public CompletableFuture<Subscription> subscribeAsync(String stream, SubscriptionOptions opts,
+                                                          MessageHandler msgHandler) {
+        return subscribeAsync(stream, opts, CommittingMessageHandler.wrap(msgHandler, stream, opts), null);
+    }
+
+    /**
+     * Creates an ephemeral subscription for the given stream without blocking, using the given
+     * {@link FlowController} for every stream opened for it instead of one for the prefetch limits of the options.
+     * The subscription resumes from the offset store set in the options, if any, but committing to it is left to the
+     * handler.
+     *
+     * @param stream     the stream to subscribe to
+     * @param opts       {@link SubscriptionOptions} for configuring the subscription
+     * @param msgHandler {@link MessageHandler} for handling messages on the stream
+     * @param flow       {@code FlowController} shared by the subscription's streams, or null
+     * @return future {@link Subscription} which can be used to unsubscribe
+     */
+    CompletableFuture<Subscription> subscribeAsync(String stream, SubscriptionOptions opts, MessageHandler msgHandler,
+                                                   FlowController flow) {
+        OffsetStore store = opts.getOffsetStore();
+        if (store != null) {
+            long committed = store.getOffset(stream, opts.getPartition());
+            if (committed >= 0) {
+                opts = opts.forPartition(opts.getPartition()).startAtOffset(committed + 1);
+            }
+        }
+        // Run the handler on the configured executor, or inline on the gRPC thread, one message at a time. Inline
+        // delivery is serialized too, since the stream replacing a moved one may deliver while the handler is still
+        // busy with the last message of the old one, on the old one's thread.
+        Executor dispatcher = new SerializedExecutor(opts.getExecutor() == null ? Runnable::run : opts.getExecutor());
+        PartitionSubscriber subscriber = new PartitionSubscriber(stream, opts, msgHandler, dispatcher, flow);
+        subscribers.add(subscriber);
+        CompletableFuture<Subscription> future = new CompletableFuture<>();
+        subscribeAsync(subscriber, 0, future);
+        return future.whenComplete((sub, t) -> {
+            if (t != null) {
+                subscribers.remove(subscriber);
+            }
+        });
+    }
+
+    /**
+     * Opens the subscriber's first stream. If there is no metadata for the partition or the broker doesn't know it,
+     * the metadata may be stale, so it is refreshed and opening is retried a few times.
+     */
+    private void subscribeAsync(PartitionSubscriber subscriber, int attempt, CompletableFuture<Subscription> future) {
+        openStreamAsync(subscriber, subscriber.opts).whenComplete((v, t) -> {
+            if (t == null) {
+                future.complete(subscriber.sub);
+                return;
+            }
+            Throwable cause = unwrap(t);
+            if (!(cause instanceof NoSuchPartitionException) || attempt >= 4) {
+                future.completeExceptionally(cause);
+                return;
+            }
             try {
-                poolAndAddr = getPoolAndAddr(stream, opts.getPartition(), opts.getReadIsrReplica());
-            } catch (NoSuchPartitionException e) {
-                ex = e;
-                try {
-                    Thread.sleep(50);
-                } catch (InterruptedException ignored) {
-                }
-                metadataCache.update();
-                continue;
+                timer.newTimeout(timeout -> refreshMetadataAsync(subscriber.stream).whenComplete((metadata, e) -> {
+                    if (e != null) {
+                        future.completeExceptionally(unwrap(e));
+                        return;
+                    }
+                    subscribeAsync(subscriber, attempt + 1, future);
+                }), 50, TimeUnit.MILLISECONDS);
+            } catch (IllegalStateException e) {
+                // The client was closed.
+                future.completeExceptionally(cause);
             }
+        });
+    }
 
-            ConnectionPool pool = poolAndAddr.pool;
-            String addr = poolAndAddr.addr;
-            // TODO: Exception handling
-            ManagedAPIClient conn = pool.get(connFactory(addr));
+    /**
+     * Opens a stream to the broker serving the subscriber's partition and makes the subscriber's
+     * {@link Subscription} control it once the broker has acknowledged it. The returned future fails with a
+     * {@link NoSuchPartitionException} when there is no metadata for the partition or the broker doesn't know it.
+     *
+     * @param subscriber {@link PartitionSubscriber} to open the stream for
+     * @param opts       {@link SubscriptionOptions} for this stream, including where to start
+     * @return future which completes once the stream is open
+     */
+    private CompletableFuture<Void> openStreamAsync(PartitionSubscriber subscriber, SubscriptionOptions opts) {
+        PoolAndAddr poolAndAddr;
+        try {
+            poolAndAddr = getPoolAndAddr(subscriber.stream, opts.getPartition(), opts.getReadIsrReplica());
+        } catch (NoSuchPartitionException e) {
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        ConnectionPool pool = poolAndAddr.pool;
+        ManagedAPIClient conn = pool.acquireStream(connFactory(poolAndAddr.addr));
+        FlowController flow = subscriber.flow != null ? subscriber.flow : FlowController.create(opts);
+        MessageHandler msgHandler = subscriber.msgHandler;
+        Executor dispatcher = subscriber.dispatcher;
+        OpenStream open = new OpenStream(poolAndAddr.addr, flow);
+        subscriber.open = open;
 
-            // TODO: Handle auto resubscribe on UNAVAILABLE errors.
-            return conn.subscribe(stream, opts, new StreamObserver<Api.Message>() {
-                @Override
-                public void onNext(Api.Message msg) {
+        StreamObserver<Api.Message> observer = new StreamObserver<Api.Message>() {
+            @Override
+            public void onNext(Api.Message msg) {
+                if (!open.accept(subscriber, msg)) {
+                    // The subscription moved to another broker and resumes from the last delivered message there.
+                    return;
+                }
+                dispatcher.execute(() -> {
                     msgHandler.onMessage(Message.fromProto(msg));
+                    if (flow != null) {
+                        flow.consumed(msg.getSerializedSize());
+                    }
+                });
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                pool.releaseStream(conn);
+                if (t instanceof StatusRuntimeException) {
+                    StatusRuntimeException e = (StatusRuntimeException) t;
+                    switch (e.getStatus().getCode()) {
+                        case CANCELLED:
+                            // Subscription cancellation shouldn't cause an error callback.
+                            if (subscriber.sub.isUnsubscribed()) {
+                                subscribers.remove(subscriber);
+                            }
+                            return;
+                        case UNAVAILABLE:
+                            // The broker went away or lost leadership of the partition.
+                            if (open.abandon()) {
+                                resubscribe(subscriber, 0, e);
+                            }
+                            return;
+                    }
+                }
+                if (!open.abandon()) {
+                    return;
                 }
+                subscribers.remove(subscriber);
+                Throwable err = subscriptionException(t);
+                dispatcher.execute(() -> msgHandler.onError(err));
+            }
+
+            @Override
+            public void onCompleted() {
+                pool.releaseStream(conn);
+                if (open.abandon()) {
+                    subscribers.remove(subscriber);
+                }
+            }
+        };
+
+        return conn.subscribeAsync(subscriber.stream, opts, observer, flow == null ? null : open).handle((sub, t) -> {
+            if (t != null) {
+                pool.releaseStream(conn);
+                throw new CompletionException(unwrap(t));
+            }
+            open.sub = sub;
+            if (!subscriber.sub.replaceWith(sub)) {
+                subscribers.remove(subscriber);
+            }
+            return null;
+        });
+    }
 
-                @Override
-                public void onError(Throwable t) {
-                    pool.put(conn);
-                    if (t instanceof StatusRuntimeException) {
-                        StatusRuntimeException e = (StatusRuntimeException) t;
-                        switch (e.getStatus().getCode()) {
-                            case CANCELLED:
-                                // Subscription cancellation shouldn't cause an error callback.
-                                return;
-                            case NOT_FOUND:
-                                // Indicates the stream was deleted.
-                                t = new StreamDeletedException("stream was deleted", e);
-                                break;
-                            case FAILED_PRECONDITION:
-                                // Indicates the partition was paused.
-                                t = new PartitionPausedException("partition was paused", e);
-                                break;
+    /**
+     * Resubscribes after the subscriber's stream failed, retrying with exponential backoff. Gives up and reports the
+     * last error to the handler after {@value #MAX_RESUBSCRIBE_ATTEMPTS} attempts or on an error which resubscribing
+     * cannot fix.
+     *
+     * @param subscriber {@link PartitionSubscriber} whose stream failed
+     * @param attempt    number of failed attempts so far
+     * @param cause      error which ended the stream or failed the last attempt
+     */
+    private void resubscribe(PartitionSubscriber subscriber, int attempt, Throwable cause) {
+        if (attempt >= MAX_RESUBSCRIBE_ATTEMPTS) {
+            fail(subscriber, cause);
+            return;
+        }
+        Runnable task = () -> {
+            if (subscriber.sub.isUnsubscribed()) {
+                subscribers.remove(subscriber);
+                return;
+            }
+            refreshMetadataAsync(subscriber.stream)
+                    .thenCompose(metadata -> openStreamAsync(subscriber, subscriber.resumeOptions()))
+                    .whenComplete((v, t) -> {
+                        if (t != null) {
+                            reopenFailed(subscriber, attempt, t);
                         }
+                    });
+        };
+        if (attempt == 0) {
+            task.run();
+            return;
+        }
+        long backoffMillis = backoffMillis(attempt, RESUBSCRIBE_BACKOFF_MILLIS, RESUBSCRIBE_MAX_BACKOFF_MILLIS);
+        try {
+            timer.newTimeout(timeout -> task.run(), backoffMillis, TimeUnit.MILLISECONDS);
+        } catch (IllegalStateException e) {
+            // The client was closed.
+            fail(subscriber, cause);
+        }
+    }
+
+    /**
+     * Retries resubscribing after opening a new stream for the subscriber failed, or gives up if retrying cannot
+     * help.
+     */
+    private void reopenFailed(PartitionSubscriber subscriber, int attempt, Throwable t) {
+        Throwable e = unwrap(t);
+        if (e instanceof NoSuchPartitionException || isUnavailable(e)) {
+            resubscribe(subscriber, attempt + 1, e);
+            return;
+        }
+        fail(subscriber, subscriptionException(e));
+    }
+
+    private void fail(PartitionSubscriber subscriber, Throwable t) {
+        subscribers.remove(subscriber);
+        subscriber.fail(t);
+    }
+
+    /**
+     * Called by the {@link MetadataCache} with the changes of each metadata update while it is locked. Hands the
+     * changes to the client itself and to the registered listeners, in order.
+     */
+    private void onMetadataChange(MetadataDiff diff) {
+        metadataEvents.execute(() -> moveRoutes(diff));
+        for (MetadataListener listener : metadataListeners) {
+            metadataEvents.execute(() -> listener.onMetadataChange(diff));
+        }
+    }
+
+    /**
+     * Acts on leader and ISR changes before publishes and subscriptions run into them. Subscriptions are moved off
+     * brokers which no longer serve their partition, resuming after the last delivered message, and connections to
+     * new leaders of partitions the client has been publishing to are opened ahead of time.
+     */
+    private void moveRoutes(MetadataDiff diff) {
+        Map<String, Set<Integer>> changed = new HashMap<>();
+        for (MetadataDiff.PartitionChange change : diff.getLeaderChanges()) {
+            changed.computeIfAbsent(change.getStream(), s -> new HashSet<>()).add(change.getPartitionId());
+            BrokerInfo oldLeader = change.getPrevious().getLeader();
+            BrokerInfo newLeader = change.getCurrent().getLeader();
+            ConnectionPool oldPool = oldLeader == null ? null : pools.get(oldLeader.getAddr());
+            if (newLeader != null && oldPool != null && oldPool.hasShared()) {
+                connectAhead(newLeader.getAddr());
+            }
+        }
+        for (MetadataDiff.PartitionChange change : diff.getIsrChanges()) {
+            changed.computeIfAbsent(change.getStream(), s -> new HashSet<>()).add(change.getPartitionId());
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        for (PartitionSubscriber subscriber : subscribers) {
+            Set<Integer> partitions = changed.get(subscriber.stream);
+            OpenStream open = subscriber.open;
+            if (partitions == null || !partitions.contains(subscriber.opts.getPartition()) || open == null
+                    || open.sub == null || servesPartition(open.addr, subscriber)) {
+                continue;
+            }
+            if (open.abandon()) {
+                // Closing the stream is reported as cancelled, which is ignored. The metadata was just updated, so
+                // the new stream is opened right away and only a failure to open it goes through resubscribing.
+                open.sub.unsubscribe();
+                openStreamAsync(subscriber, subscriber.resumeOptions()).whenComplete((v, t) -> {
+                    if (t != null) {
+                        reopenFailed(subscriber, 0, t);
                     }
-                    msgHandler.onError(t);
-                }
+                });
+            }
+        }
+    }
 
-                @Override
-                public void onCompleted() {
-                    pool.put(conn);
+    /**
+     * Returns whether the broker at the given address is one the subscriber would be routed to by the current
+     * metadata: the partition leader, or any ISR replica if the subscriber reads from ISR replicas.
+     */
+    private boolean servesPartition(String addr, PartitionSubscriber subscriber) {
+        StreamInfo stream = metadataCache.getMetadata().getStream(subscriber.stream);
+        PartitionInfo partition = stream == null ? null : stream.getPartition(subscriber.opts.getPartition());
+        if (partition == null) {
+            // Leave the subscription to fail on its own if the partition is gone.
+            return true;
+        }
+        if (partition.getLeader() != null && addr.equals(partition.getLeader().getAddr())) {
+            return true;
+        }
+        if (subscriber.opts.getReadIsrReplica()) {
+            for (BrokerInfo replica : partition.getISR()) {
+                if (replica != null && addr.equals(replica.getAddr())) {
+                    return true;
                 }
-            });
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Opens the shared connection to the given broker, if there is none, so the next RPC routed to it doesn't wait
+     * for the connection to be established.
+     */
+    private synchronized void connectAhead(String addr) {
+        if (closed) {
+            return;
+        }
+        getPool(addr).getShared(connFactory(addr)).connect();
+    }
+
+    /**
+     * Maps a subscription stream error to the exception reported to the {@link MessageHandler}.
+     */
+    private static Throwable subscriptionException(Throwable t) {
+        if (!(t instanceof StatusRuntimeException)) {
+            return t;
+        }
+        StatusRuntimeException e = (StatusRuntimeException) t;
+        switch (e.getStatus().getCode()) {
+            case NOT_FOUND:
+                // Indicates the stream was deleted.
+                return new StreamDeletedException("stream was deleted", e);
+            case FAILED_PRECONDITION:
+                // Indicates the partition was paused.
+                return new PartitionPausedException("partition was paused", e);
+            default:
+                return t;
+        }
+    }
+
+    /**
+     * Creates an ephemeral subscription for the given stream which hands messages to the given
+     * {@link BatchMessageHandler} in batches. Batches are closed as configured by {@link BatchOptions}. A batch which
+     * fills up is handed over on the thread receiving its last message, which is the configured
+     * {@link SubscriptionOptions#setExecutor executor} if any. A batch closed by the maximum wait time is handed over
+     * on the configured executor, or the common fork-join pool if there is none. Batches are never handed over
+     * concurrently and messages still in an open batch are dropped when unsubscribing. Messages in an open batch count
+     * against the prefetch limits of the options until the batch is handed over, so a prefetch count below the
+     * batch's maximum messages makes batches close on the maximum wait time.
+     *
+     * @param stream     the stream to subscribe to
+     * @param opts       {@link SubscriptionOptions} for configuring the subscription
+     * @param batchOpts  {@link BatchOptions} for configuring when batches are closed
+     * @param msgHandler {@link BatchMessageHandler} for handling batches of messages on the stream
+     * @return {@link Subscription} which can be used to unsubscribe
+     * @throws NoSuchPartitionException when the stream or partition being subscribed to doesn't exist
+     */
+    public Subscription subscribe(String stream, SubscriptionOptions opts, BatchOptions batchOpts,
+                                  BatchMessageHandler msgHandler) throws NoSuchPartitionException {
+        Executor executor = opts.getExecutor() == null ? ForkJoinPool.commonPool() : opts.getExecutor();
+        OffsetStore store = opts.getOffsetStore();
+        if (store != null) {
+            msgHandler = new CommittingBatchMessageHandler(msgHandler, stream, store);
         }
-        throw ex;
+        MessageBatcher batcher = new MessageBatcher(msgHandler, batchOpts, timer, executor,
+                FlowController.create(opts));
+        return APIClient.await(subscribeAsync(stream, opts, batcher, batcher.flowController()));
+    }
+
+    /**
+     * Creates an ephemeral subscription for the given stream which is consumed by polling the returned
+     * {@link PollingSubscription} instead of through a handler. Up to the given number of messages, rounded up to a
+     * power of two, are prefetched into its buffer. The executor set in the options is not used.
+     *
+     * @param stream   the stream to subscribe to
+     * @param opts     {@link SubscriptionOptions} for configuring the subscription
+     * @param capacity number of messages to buffer
+     * @return {@link PollingSubscription} to poll messages from
+     * @throws NoSuchPartitionException when the stream or partition being subscribed to doesn't exist
+     */
+    public PollingSubscription subscribePolling(String stream, SubscriptionOptions opts, int capacity)
+            throws NoSuchPartitionException {
+        PollingSubscription polling = new PollingSubscription(capacity, stream, opts.getOffsetStore());
+        SubscriptionOptions inlineOpts = opts.forPartition(opts.getPartition()).setExecutor(null);
+        polling.setSubscription(APIClient.await(
+                subscribeAsync(stream, inlineOpts, polling.handler(), polling.flowController())));
+        return polling;
+    }
+
+    /**
+     * Creates ephemeral subscriptions to every partition of the given stream, as listed in the client's metadata, and
+     * returns a single {@link Subscription} covering all of them. The partition subscriptions are opened in parallel,
+     * each to its partition leader or, with {@link SubscriptionOptions#readIsrReplica()}, to a random ISR replica. The
+     * partition set in the options is ignored.
+     * <p>
+     * Messages of each partition are delivered in order, but the handler may be called concurrently for different
+     * partitions and so must be thread-safe. If any partition cannot be subscribed to, the subscriptions already
+     * opened are closed and the error is thrown.
+     *
+     * @param stream     the stream to subscribe to
+     * @param opts       {@link SubscriptionOptions} for configuring the partition subscriptions
+     * @param msgHandler {@link MessageHandler} for handling messages on all partitions of the stream
+     * @return {@link Subscription} which can be used to unsubscribe from all partitions
+     * @throws NoSuchStreamException    when the stream doesn't exist
+     * @throws NoSuchPartitionException when a partition being subscribed to doesn't exist anymore
+     */
+    public Subscription subscribeAll(String stream, SubscriptionOptions opts, MessageHandler msgHandler)
+            throws NoSuchStreamException, NoSuchPartitionException {
+        return subscribePartitions(stream, opts, CommittingMessageHandler.wrap(msgHandler, stream, opts),
+                partition -> null);
+    }
+
+    /**
+     * Subscribes the given handler to every partition of the given stream as described in {@link #subscribeAll},
+     * leaving committing to the offset store to the handler. Each partition's subscription uses the
+     * {@link FlowController} returned for it, or one for the prefetch limits of the options if that is null.
+     */
+    private Subscription subscribePartitions(String stream, SubscriptionOptions opts, MessageHandler msgHandler,
+                                             IntFunction<FlowController> flows)
+            throws NoSuchStreamException, NoSuchPartitionException {
+        StreamInfo info = metadataCache.getMetadata().getStream(stream);
+        if (info == null) {
+            info = metadataCache.update(stream).getStream(stream);
+        }
+        if (info == null) {
+            throw new NoSuchStreamException(String.format("Stream does not exist: %s", stream), null);
+        }
+        List<Integer> partitions = new ArrayList<>(info.getPartitions().keySet());
+        Collections.sort(partitions);
+
+        // Open all partitions at once rather than waiting for each handshake in turn.
+        List<CompletableFuture<Subscription>> futures = new ArrayList<>(partitions.size());
+        for (int partition : partitions) {
+            futures.add(subscribeAsync(stream, opts.forPartition(partition), msgHandler, flows.apply(partition)));
+        }
+        CompletableFuture<Subscription> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> {
+                    List<Subscription> subs = new ArrayList<>(futures.size());
+                    for (CompletableFuture<Subscription> future : futures) {
+                        subs.add(future.join());
+                    }
+                    return Subscription.composite(subs);
+                });
+        all.whenComplete((sub, t) -> {
+            if (t != null) {
+                // Close the partitions which were subscribed to.
+                for (CompletableFuture<Subscription> future : futures) {
+                    future.thenAccept(Subscription::unsubscribe);
+                }
+            }
+        });
+        return APIClient.await(all);
+    }
+
+    /**
+     * Creates ephemeral subscriptions to every partition of the given stream, as in {@link #subscribeAll}, and runs
+     * the handler on a worker pool. Messages with the same key are handled one at a time and in order, while messages
+     * with different keys are handled concurrently, so a stream with few partitions can still use every core. Messages
+     * without a key may be handled in any order. The handler must be thread-safe and
+     * {@link MessageHandler#onError} may be called while messages are still being handled.
+     * <p>
+     * The number of messages received but not yet handled is bounded by {@link ParallelOptions#getMaxInFlight}, which
+     * takes the place of the prefetch limits of the options. A message counts as handled once its handler returns or
+     * throws. The returned {@link ParallelSubscription} tracks, for each partition, the highest offset up to which
+     * every message has been handled, which is where to resume from.
+     *
+     * @param stream       the stream to subscribe to
+     * @param opts         {@link SubscriptionOptions} for configuring the partition subscriptions
+     * @param parallelOpts {@link ParallelOptions} for configuring the worker pool
+     * @param msgHandler   {@link MessageHandler} for handling messages on all partitions of the stream
+     * @return {@link ParallelSubscription} which can be used to unsubscribe and to get the completed offsets
+     * @throws NoSuchStreamException    when the stream doesn't exist
+     * @throws NoSuchPartitionException when a partition being subscribed to doesn't exist anymore
+     */
+    public ParallelSubscription subscribeParallel(String stream, SubscriptionOptions opts,
+                                                  ParallelOptions parallelOpts, MessageHandler msgHandler)
+            throws NoSuchStreamException, NoSuchPartitionException {
+        KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher(msgHandler, parallelOpts, stream,
+                opts.getOffsetStore());
+        return new ParallelSubscription(subscribePartitions(stream, opts, dispatcher, dispatcher::flowController),
+                dispatcher);
     }
 
     /**
@@ -173,6 +664,9 @@ public class Client {
      * subject that gets published to. To publish directly to a specific NATS subject, use the low-level
      * {@link #publishToSubject} API.
      * <p>
+     * The message is sent straight to the partition leader. If the leader is unavailable, the cluster metadata is
+     * refreshed and the publish is retried on the new leader.
+     * <p>
      * If the {@link io.liftbridge.MessageOptions.AckPolicy} is not {@code NONE} and a deadline is provided, this will
      * synchronously block until the ack is received. If the ack is not received in time, a
      * {@link DeadlineExceededException} is thrown. If an {@code AckPolicy} and deadline are configured, this returns
@@ -185,9 +679,33 @@ public class Client {
      * @throws DeadlineExceededException when the configured deadline was exceeded
      */
     public Ack publish(String stream, byte[] payload, MessageOptions opts) throws DeadlineExceededException {
+        int partition = partition(stream, payload, opts);
+        return publish(APIClient.publishRequest(stream, partition, payload, opts), opts);
+    }
+
+    /**
+     * Publishes a new message to a Liftbridge stream without copying the payload, key or header values. This behaves
+     * like {@link #publish}, except that the remaining bytes of the buffer, heap or direct, are sent as they are.
+     * <p>
+     * Ownership: the buffer's contents, the message key and the header values are shared with the client until this
+     * method returns. They must not be modified by another thread in the meantime. The buffer's position and limit
+     * are not changed. Since the payload is never materialized as an array, the {@link Partitioner}, if one is used,
+     * receives a null value.
+     *
+     * @param stream  name of stream to publish to
+     * @param payload message value
+     * @param opts    {@code MessageOptions} to configure message
+     * @return {@code Ack} if an AckPolicy and deadline are configured or null
+     * @throws DeadlineExceededException when the configured deadline was exceeded
+     */
+    public Ack publishBuffer(String stream, ByteBuffer payload, MessageOptions opts) throws DeadlineExceededException {
+        return publish(wrappedPublishRequest(stream, payload, opts), opts);
+    }
+
+    private Ack publish(Api.PublishRequest request, MessageOptions opts) throws DeadlineExceededException {
         Api.PublishResponse resp;
         try {
-            resp = doResilientRPC(client -> client.publish(stream, payload, opts));
+            resp = doLeaderRPC(request.getStream(), request.getPartition(), client -> client.publish(request, opts));
         } catch (StatusRuntimeException e) {
             if (e.getStatus().getCode() == Status.Code.DEADLINE_EXCEEDED) {
                 throw new DeadlineExceededException(e);
@@ -232,6 +750,114 @@ public class Client {
         return Ack.fromProto(resp.getAck());
     }
 
+    /**
+     * Publishes a new message to a Liftbridge stream without blocking the calling thread. Partitioning works the same
+     * as in {@link #publish}.
+     * <p>
+     * If the {@link io.liftbridge.MessageOptions.AckPolicy} is not {@code NONE} and a deadline is provided, the
+     * returned future is completed with the Ack once it is received. If the ack is not received in time, the future
+     * fails with a {@link DeadlineExceededException}. If no {@code AckPolicy} and deadline are configured, the future
+     * is completed with null once the message has been accepted by the server.
+     *
+     * @param stream  name of stream to publish to
+     * @param payload message value
+     * @param opts    {@code MessageOptions} to configure message
+     * @return future {@code Ack}
+     */
+    public CompletableFuture<Ack> publishAsync(String stream, byte[] payload, MessageOptions opts) {
+        return publishAsync(stream, partition(stream, payload, opts), payload, opts);
+    }
+
+    /**
+     * Publishes a new message to the given stream partition without blocking. Any partition or {@link Partitioner}
+     * set on the {@code MessageOptions} is ignored. Used by publishers which resolve the partition up front.
+     */
+    CompletableFuture<Ack> publishAsync(String stream, int partition, byte[] payload, MessageOptions opts) {
+        return publishAsync(APIClient.publishRequest(stream, partition, payload, opts), opts);
+    }
+
+    /**
+     * Publishes a new message to a Liftbridge stream without blocking and without copying the payload, key or header
+     * values. See {@link #publishBuffer} for the ownership rules, which apply until the returned future completes.
+     *
+     * @param stream  name of stream to publish to
+     * @param payload message value
+     * @param opts    {@code MessageOptions} to configure message
+     * @return future {@code Ack}
+     */
+    public CompletableFuture<Ack> publishBufferAsync(String stream, ByteBuffer payload, MessageOptions opts) {
+        return publishAsync(wrappedPublishRequest(stream, payload, opts), opts);
+    }
+
+    /**
+     * Sends a publish request to its partition leader without blocking, as
+     * {@link #publishAsync(String, byte[], MessageOptions)} does. Used by publishers which build their own requests.
+     */
+    CompletableFuture<Ack> publishAsync(Api.PublishRequest request, MessageOptions opts) {
+        CompletableFuture<Ack> future = new CompletableFuture<>();
+        AsyncRPC<Api.PublishResponse> rpc = client -> client.publishAsync(request, opts);
+        doLeaderRPCAsync(request.getStream(), request.getPartition(), rpc).whenComplete((resp, t) -> {
+            if (t != null) {
+                future.completeExceptionally(publishException(t));
+                return;
+            }
+            future.complete(resp.hasAck() ? Ack.fromProto(resp.getAck()) : null);
+        });
+        return future;
+    }
+
+    /**
+     * Returns the partition a message is published to: the one set on the {@code MessageOptions} or, if there is none,
+     * the one selected by its {@link Partitioner} given the current metadata.
+     */
+    int partition(String stream, byte[] payload, MessageOptions opts) {
+        return APIClient.partition(stream, payload, metadataCache.getMetadata(), opts);
+    }
+
+    private Api.PublishRequest wrappedPublishRequest(String stream, ByteBuffer payload, MessageOptions opts) {
+        int partition = partition(stream, null, opts);
+        ByteString value = payload == null ? null : UnsafeByteOperations.unsafeWrap(payload.slice());
+        return APIClient.publishRequest(stream, partition, value, opts, opts.getCorrelationId(), true);
+    }
+
+    /**
+     * Publishes a new message to a NATS subject without blocking the calling thread. Like {@link #publishToSubject},
+     * {@code MessageOptions} related to partitioning are ignored.
+     * <p>
+     * If the {@link io.liftbridge.MessageOptions.AckPolicy} is not {@code NONE} and a deadline is provided, the
+     * returned future is completed with the first Ack once it is received. If an ack is not received in time, the
+     * future fails with a {@link DeadlineExceededException}. If no {@code AckPolicy} and deadline are configured, the
+     * future is completed with null.
+     *
+     * @param subject NATS subject to publish to
+     * @param payload message value
+     * @param opts    {@code MessageOptions} to configure message
+     * @return future {@code Ack}
+     */
+    public CompletableFuture<Ack> publishToSubjectAsync(String subject, byte[] payload, MessageOptions opts) {
+        CompletableFuture<Ack> future = new CompletableFuture<>();
+        AsyncRPC<Api.PublishToSubjectResponse> rpc = client -> client.publishToSubjectAsync(subject, payload, opts);
+        doResilientRPCAsync(rpc).whenComplete((resp, t) -> {
+            if (t != null) {
+                future.completeExceptionally(publishException(t));
+                return;
+            }
+            future.complete(resp.hasAck() ? Ack.fromProto(resp.getAck()) : null);
+        });
+        return future;
+    }
+
+    /**
+     * Maps a failed publish to the exception thrown by the equivalent synchronous call.
+     */
+    static Throwable publishException(Throwable t) {
+        if (t instanceof StatusRuntimeException
+                && ((StatusRuntimeException) t).getStatus().getCode() == Status.Code.DEADLINE_EXCEEDED) {
+            return new DeadlineExceededException((StatusRuntimeException) t);
+        }
+        return t;
+    }
+
     /**
      * Executes the given RPC and performs retries if it fails due to the broker being unavailable, cycling through the
      * known broker list.
@@ -249,9 +875,7 @@ public class Client {
             } catch (StatusRuntimeException e) {
                 if (e.getStatus().getCode() == Status.Code.UNAVAILABLE) {
                     // TODO: add error handling here
-                    client = dialBroker();
-                    getAPIClient().close();
-                    setAPIClient(client);
+                    client = reconnect(client);
                     continue;
                 }
                 throw e;
@@ -260,8 +884,247 @@ public class Client {
         return null;
     }
 
+    /**
+     * Asynchronous counterpart of {@link #doResilientRPC}. Retries happen from the gRPC callback, so no thread is
+     * blocked while waiting on the broker.
+     *
+     * @param rpc {@link AsyncRPC} to execute
+     * @param <T> response type
+     * @return future RPC result, failed with a {@link StatusRuntimeException} on gRPC errors
+     */
+    private <T> CompletableFuture<T> doResilientRPCAsync(AsyncRPC<T> rpc) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        doResilientRPCAsync(rpc, getAPIClient(), 0, future);
+        return future;
+    }
+
+    private <T> void doResilientRPCAsync(AsyncRPC<T> rpc, ManagedAPIClient client, int attempt,
+                                         CompletableFuture<T> future) {
+        CompletableFuture<T> result;
+        try {
+            result = rpc.execute(client);
+        } catch (RuntimeException e) {
+            // The RPC failed to start, which would otherwise leave the future pending forever on a retry.
+            future.completeExceptionally(e);
+            return;
+        }
+        result.whenComplete((resp, t) -> {
+            if (t == null) {
+                future.complete(resp);
+                return;
+            }
+            if (attempt < 9 && isUnavailable(t)) {
+                doResilientRPCAsync(rpc, reconnect(client), attempt + 1, future);
+                return;
+            }
+            future.completeExceptionally(t);
+        });
+    }
+
+    /**
+     * Executes the given RPC on the shared connection to the leader of the given stream partition. If the broker is
+     * unavailable, the leader is looked up again in refreshed metadata and the RPC is retried, right away the first
+     * time and then with exponential backoff while the cluster elects a new leader. If there is no metadata for the
+     * partition even after a refresh, this falls back to {@link #doResilientRPC} and lets the broker decide.
+     *
+     * @param stream    stream the RPC targets
+     * @param partition partition the RPC targets
+     * @param rpc       {@link RPC} to execute
+     * @param <T>       response type
+     * @return RPC result
+     * @throws StatusRuntimeException gRPC exception
+     */
+    private <T> T doLeaderRPC(String stream, int partition, RPC<T> rpc) throws StatusRuntimeException {
+        boolean refreshed = false;
+        int retries = 0;
+        for (int i = 0; i < MAX_LEADER_RPC_ATTEMPTS; i++) {
+            PoolAndAddr poolAndAddr;
+            try {
+                poolAndAddr = getPoolAndAddr(stream, partition, false);
+            } catch (NoSuchPartitionException e) {
+                if (refreshed) {
+                    return doResilientRPC(rpc);
+                }
+                metadataCache.update(stream);
+                refreshed = true;
+                continue;
+            }
+            ManagedAPIClient client = poolAndAddr.pool.getShared(connFactory(poolAndAddr.addr));
+            try {
+                return rpc.execute(client);
+            } catch (StatusRuntimeException e) {
+                if (i < MAX_LEADER_RPC_ATTEMPTS - 1 && isUnavailable(e)) {
+                    // The leader may have moved, so look it up again before retrying.
+                    poolAndAddr.pool.resetShared(client);
+                    if (retries > 0) {
+                        try {
+                            Thread.sleep(backoffMillis(retries, LEADER_RPC_BACKOFF_MILLIS,
+                                    LEADER_RPC_MAX_BACKOFF_MILLIS));
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                            throw e;
+                        }
+                    }
+                    retries++;
+                    metadataCache.update(stream);
+                    refreshed = true;
+                    continue;
+                }
+                throw e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Asynchronous counterpart of {@link #doLeaderRPC}. Metadata refreshes run off the gRPC callback thread.
+     *
+     * @param stream    stream the RPC targets
+     * @param partition partition the RPC targets
+     * @param rpc       {@link AsyncRPC} to execute
+     * @param <T>       response type
+     * @return future RPC result, failed with a {@link StatusRuntimeException} on gRPC errors
+     */
+    private <T> CompletableFuture<T> doLeaderRPCAsync(String stream, int partition, AsyncRPC<T> rpc) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        doLeaderRPCAsync(stream, partition, rpc, 0, false, future);
+        return future;
+    }
+
+    private <T> void doLeaderRPCAsync(String stream, int partition, AsyncRPC<T> rpc, int attempt, boolean refreshed,
+                                      CompletableFuture<T> future) {
+        PoolAndAddr poolAndAddr;
+        try {
+            poolAndAddr = getPoolAndAddr(stream, partition, false);
+        } catch (NoSuchPartitionException e) {
+            if (refreshed) {
+                forward(doResilientRPCAsync(rpc), future);
+                return;
+            }
+            refreshMetadataAsync(stream).whenComplete(
+                    (metadata, t) -> doLeaderRPCAsync(stream, partition, rpc, attempt, true, future));
+            return;
+        }
+        ManagedAPIClient client;
+        CompletableFuture<T> result;
+        try {
+            client = poolAndAddr.pool.getShared(connFactory(poolAndAddr.addr));
+            result = rpc.execute(client);
+        } catch (RuntimeException e) {
+            // Dialing the leader or starting the RPC failed, which would otherwise leave the future pending forever
+            // on a retry.
+            future.completeExceptionally(e);
+            return;
+        }
+        result.whenComplete((resp, t) -> {
+            if (t == null) {
+                future.complete(resp);
+                return;
+            }
+            if (attempt < MAX_LEADER_RPC_ATTEMPTS - 1 && isUnavailable(t)) {
+                poolAndAddr.pool.resetShared(client);
+                Runnable retry = () -> refreshMetadataAsync(stream).whenComplete(
+                        (metadata, t2) -> doLeaderRPCAsync(stream, partition, rpc, attempt + 1, true, future));
+                if (attempt == 0) {
+                    retry.run();
+                    return;
+                }
+                try {
+                    timer.newTimeout(timeout -> retry.run(),
+                            backoffMillis(attempt, LEADER_RPC_BACKOFF_MILLIS, LEADER_RPC_MAX_BACKOFF_MILLIS),
+                            TimeUnit.MILLISECONDS);
+                } catch (IllegalStateException e) {
+                    // The client was closed.
+                    future.completeExceptionally(t);
+                }
+                return;
+            }
+            future.completeExceptionally(t);
+        });
+    }
+
+    /**
+     * Returns how long to wait before the given retry, doubling from the base delay up to the maximum.
+     *
+     * @param retry retry number, starting at 1
+     */
+    private static long backoffMillis(int retry, long baseMillis, long maxMillis) {
+        return Math.min(baseMillis << Math.min(retry - 1, 30), maxMillis);
+    }
+
+    private CompletableFuture<Metadata> refreshMetadataAsync() {
+        return metadataCache.updateAsync();
+    }
+
+    /**
+     * Refreshes the metadata of a single stream, such as after a lookup miss or a failure talking to one of its
+     * partitions' brokers, without fetching every stream in the cluster.
+     */
+    private CompletableFuture<Metadata> refreshMetadataAsync(String stream) {
+        return metadataCache.updateAsync(stream);
+    }
+
+    /**
+     * Refreshes the metadata after the configured interval, and again after each refresh, until the client is
+     * closed. A failed refresh is retried at the next interval.
+     */
+    private void scheduleMetadataRefresh() {
+        long intervalMillis = opts.getMetadataRefreshIntervalMillis();
+        if (intervalMillis <= 0) {
+            return;
+        }
+        try {
+            timer.newTimeout(timeout -> refreshMetadataAsync().whenComplete((metadata, t) -> scheduleMetadataRefresh()),
+                    intervalMillis, TimeUnit.MILLISECONDS);
+        } catch (IllegalStateException e) {
+            // The client was closed.
+        }
+    }
+
+    private static <T> void forward(CompletableFuture<T> from, CompletableFuture<T> to) {
+        from.whenComplete((result, t) -> {
+            if (t != null) {
+                to.completeExceptionally(t);
+                return;
+            }
+            to.complete(result);
+        });
+    }
+
+    /**
+     * Returns the cause of a {@link CompletionException} thrown by a stage of a future.
+     */
+    private static Throwable unwrap(Throwable t) {
+        if (t instanceof CompletionException && t.getCause() != null) {
+            return t.getCause();
+        }
+        return t;
+    }
+
+    private static boolean isUnavailable(Throwable t) {
+        return t instanceof StatusRuntimeException
+                && ((StatusRuntimeException) t).getStatus().getCode() == Status.Code.UNAVAILABLE;
+    }
+
+    /**
+     * Replaces the shared broker connection after it failed with UNAVAILABLE. If another caller already replaced the
+     * failed connection, the current one is returned instead of dialing again.
+     *
+     * @param failed the connection the RPC failed on
+     * @return connection to retry on
+     */
+    private synchronized ManagedAPIClient reconnect(ManagedAPIClient failed) {
+        if (this.conn != failed) {
+            return this.conn;
+        }
+        ManagedAPIClient client = dialBroker();
+        this.conn.close();
+        this.conn = client;
+        return client;
+    }
+
     private ConnectionPool.ConnectionFactory connFactory(String addr) {
-        return () -> dialBroker(addr);
+        return () -> dialBroker(addr, opts);
     }
 
     /**
@@ -278,22 +1141,36 @@ public class Client {
         if (addr == null) {
             throw new NoSuchPartitionException("no metadata for partition");
         }
-        synchronized (this) {
-            ConnectionPool pool = pools.get(addr);
-            if (pool == null) {
-                pool = new ConnectionPool(opts.getMaxConnsPerBroker(), opts.getKeepAliveTimeMillis());
-                pools.put(addr, pool);
+        return new PoolAndAddr(addr, getPool(addr));
+    }
+
+    private ConnectionPool getPool(String addr) {
+        ConnectionPool pool = pools.get(addr);
+        if (pool == null) {
+            synchronized (this) {
+                pool = pools.computeIfAbsent(addr, a -> new ConnectionPool(opts.getMaxConnsPerBroker(),
+                        opts.getKeepAliveTimeMillis(), opts.getMaxStreamsPerChannel(), timer));
             }
-            return new PoolAndAddr(addr, pool);
         }
+        return pool;
     }
 
-    private synchronized ManagedAPIClient getAPIClient() {
-        return this.conn;
+    /**
+     * Returns the current number of open channels and active subscription streams for each broker the client has
+     * connected to for subscriptions or publishes, keyed by broker address.
+     *
+     * @return {@link ConnectionStats} by broker address
+     */
+    public synchronized Map<String, ConnectionStats> getConnectionStats() {
+        Map<String, ConnectionStats> stats = new HashMap<>();
+        for (Map.Entry<String, ConnectionPool> entry : pools.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().stats());
+        }
+        return stats;
     }
 
-    private synchronized void setAPIClient(ManagedAPIClient client) {
-        this.conn = client;
+    private synchronized ManagedAPIClient getAPIClient() {
+        return this.conn;
     }
 
     /**
@@ -302,7 +1179,7 @@ public class Client {
      * @return ManagedAPIClient
      */
     private ManagedAPIClient dialBroker() {
-        return dialBroker(metadataCache.getAddrs());
+        return dialBroker(metadataCache.getAddrs(), opts);
     }
 
     /**
@@ -310,22 +1187,142 @@ public class Client {
      * successful.
      *
      * @param addrs set of addresses to dial
+     * @param opts  {@link ClientOptions} with the channel factory to dial with
      * @return ManagedAPIClient
      */
-    private static ManagedAPIClient dialBroker(Set<String> addrs) {
+    private static ManagedAPIClient dialBroker(Set<String> addrs, ClientOptions opts) {
         List<String> addrsList = new ArrayList<>(addrs);
         Collections.shuffle(addrsList);
         for (String addr : addrsList) {
-            return dialBroker(addr);
+            return dialBroker(addr, opts);
         }
         return null;
     }
 
-    private static ManagedAPIClient dialBroker(String addr) {
+    private static ManagedAPIClient dialBroker(String addr, ClientOptions opts) {
+        return new ManagedAPIClient(opts.getChannelFactory().apply(addr));
+    }
+
+    /**
+     * Opens a channel to the broker at the given address. This is the default channel factory of
+     * {@link ClientOptions}.
+     */
+    static ManagedChannel newChannel(String addr) {
         // TODO: Implement TLS.
         ManagedChannelBuilder<?> channelBuilder = ManagedChannelBuilder.forTarget(addr);
-        ManagedChannel channel = channelBuilder.usePlaintext().build();
-        return new ManagedAPIClient(channel);
+        return channelBuilder.usePlaintext().build();
+    }
+
+    /**
+     * State of a partition subscription which outlives the individual streams opened for it.
+     */
+    private static class PartitionSubscriber {
+        private final String stream;
+        private final SubscriptionOptions opts;
+        private final MessageHandler msgHandler;
+        private final Executor dispatcher;
+        private final FlowController flow;
+        private final Subscription sub = new Subscription();
+        private volatile long lastOffset = -1;
+        // Stream most recently opened for the subscription.
+        private volatile OpenStream open;
+
+        PartitionSubscriber(String stream, SubscriptionOptions opts, MessageHandler msgHandler, Executor dispatcher,
+                            FlowController flow) {
+            this.stream = stream;
+            this.opts = opts;
+            this.msgHandler = msgHandler;
+            this.dispatcher = dispatcher;
+            this.flow = flow;
+        }
+
+        /**
+         * Returns the options for resubscribing, which resume after the last received message if there was one.
+         */
+        SubscriptionOptions resumeOptions() {
+            long offset = lastOffset;
+            if (offset < 0) {
+                return opts;
+            }
+            return opts.forPartition(opts.getPartition()).startAtOffset(offset + 1);
+        }
+
+        void fail(Throwable t) {
+            if (!sub.isUnsubscribed()) {
+                dispatcher.execute(() -> msgHandler.onError(t));
+            }
+        }
+    }
+
+    /**
+     * A stream opened for a {@link PartitionSubscriber}. Once abandoned, because it failed or because the
+     * subscription is moving to another broker, its messages and errors are ignored.
+     * <p>
+     * The stream is also the {@link FlowController} of its call, in front of the subscription's, which may be shared
+     * by the streams opened for the subscription. Messages are only counted once accepted, so messages ignored after
+     * abandoning the stream don't use up demand meant for the stream replacing it.
+     */
+    private static class OpenStream implements FlowController {
+        private final String addr;
+        private final FlowController flow;
+        private volatile Subscription sub;
+        private volatile boolean abandoned;
+
+        OpenStream(String addr, FlowController flow) {
+            this.addr = addr;
+            this.flow = flow;
+        }
+
+        @Override
+        public void start(ClientCallStreamObserver<?> call) {
+            flow.start(call);
+        }
+
+        @Override
+        public void handshake() {
+            flow.handshake();
+        }
+
+        @Override
+        public void received(int bytes) {
+            // Counted by accept.
+        }
+
+        @Override
+        public void consumed(int bytes) {
+            flow.consumed(bytes);
+        }
+
+        /**
+         * Accepts a message received on the stream unless it was abandoned, recording it as the subscriber's last
+         * received message and counting it with the flow controller. Abandoning waits for a message being
+         * accepted, so a subscription moving to another broker resumes after it.
+         *
+         * @return false if the stream was abandoned and the message is to be ignored
+         */
+        synchronized boolean accept(PartitionSubscriber subscriber, Api.Message msg) {
+            if (abandoned) {
+                return false;
+            }
+            subscriber.lastOffset = msg.getOffset();
+            if (flow != null) {
+                flow.received(msg.getSerializedSize());
+            }
+            return true;
+        }
+
+        /**
+         * Abandons the stream, making sure only one of its error and a move away from its broker acts on it.
+         *
+         * @return false if the stream was already abandoned
+         */
+        synchronized boolean abandon() {
+            if (abandoned) {
+                return false;
+            }
+            abandoned = true;
+            return true;
+        }
     }
 
     private static class PoolAndAddr {
@@ -344,6 +1341,10 @@ public class Client {
     public static class Builder {
 
         private final Set<String> addrs = new HashSet<>();
+        private int maxStreamsPerChannel;
+        private long metadataRefreshIntervalMillis;
+        private Path metadataSnapshotPath;
+        private Function<String, ManagedChannel> channelFactory;
 
         private Builder() {
         }
@@ -372,6 +1373,69 @@ public class Client {
             return this;
         }
 
+        /**
+         * Sets the maximum number of concurrent subscription streams multiplexed over one gRPC channel to a broker.
+         * Subscriptions then share a small number of channels per broker, and a new channel is opened only once all
+         * existing ones carry this many streams. The default of 0 gives every subscription a channel of its own. The
+         * broker's own concurrent stream limit, if any, should not be exceeded.
+         *
+         * @param maxStreamsPerChannel maximum streams per channel, or 0 for one channel per subscription
+         * @return {@code this} to allow for call chaining
+         */
+        public Client.Builder withMaxStreamsPerChannel(int maxStreamsPerChannel) {
+            if (maxStreamsPerChannel < 0) {
+                throw new IllegalArgumentException("maxStreamsPerChannel must not be negative");
+            }
+            this.maxStreamsPerChannel = maxStreamsPerChannel;
+            return this;
+        }
+
+        /**
+         * Sets the interval at which the client refreshes the cluster metadata in the background. Regular refreshes
+         * pick up leader changes before a publish or subscription runs into them. Refreshes needed on demand, such as
+         * after a broker failed, happen regardless, and concurrent ones share a single request. Defaults to 0, which
+         * disables background refreshes.
+         *
+         * @param interval interval between refreshes, or 0 to disable them
+         * @param unit     time unit of interval
+         * @return {@code this} to allow for call chaining
+         */
+        public Client.Builder withMetadataRefreshInterval(long interval, TimeUnit unit) {
+            if (interval < 0) {
+                throw new IllegalArgumentException("interval must not be negative");
+            }
+            this.metadataRefreshIntervalMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        /**
+         * Keeps a snapshot of the cluster metadata in the given file, saved in the background whenever a refresh
+         * changes the metadata. If the file holds a snapshot when the client is built, the client starts out routing
+         * by it and {@link #build()} returns without waiting for the cluster, while the metadata is fetched in the
+         * background. Routes which turned stale in the meantime are corrected as on any metadata change. Without a
+         * usable snapshot, {@code build()} fetches the metadata first as usual. A snapshot saved by a client built
+         * with other broker addresses is not used. By default no snapshot is kept.
+         *
+         * @param path file to keep the snapshot in, created if it doesn't exist
+         * @return {@code this} to allow for call chaining
+         */
+        public Client.Builder withMetadataSnapshot(Path path) {
+            this.metadataSnapshotPath = path;
+            return this;
+        }
+
+        /**
+         * Replaces how channels to brokers are opened, which lets tests connect the client to brokers running in
+         * the same process.
+         *
+         * @param channelFactory function opening a channel to the broker at the given address
+         * @return {@code this} to allow for call chaining
+         */
+        Client.Builder withChannelFactory(Function<String, ManagedChannel> channelFactory) {
+            this.channelFactory = channelFactory;
+            return this;
+        }
+
         /**
          * Creates a configured {@link Client} instance.
          *
@@ -384,12 +1448,31 @@ public class Client {
 
             ClientOptions opts = new ClientOptions();
             opts.setBrokers(addrs);
+            opts.setMaxStreamsPerChannel(maxStreamsPerChannel);
+            opts.setMetadataRefreshIntervalMillis(metadataRefreshIntervalMillis);
+            opts.setMetadataSnapshotPath(metadataSnapshotPath);
+            if (channelFactory != null) {
+                opts.setChannelFactory(channelFactory);
+            }
 
-            ManagedAPIClient apiClient = Client.dialBroker(addrs);
+            ManagedAPIClient apiClient = Client.dialBroker(addrs, opts);
             Client client = new Client(apiClient, opts);
-            MetadataCache metadataCache = new MetadataCache(addrs, client::doResilientRPC);
-            metadataCache.update();
-            client.setMetadataCache(metadataCache);
+            MetadataSnapshot snapshot = metadataSnapshotPath == null
+                    ? null
+                    : new MetadataSnapshot(metadataSnapshotPath, addrs);
+            MetadataCache metadataCache = new MetadataCache(addrs, client::doResilientRPC, client::onMetadataChange,
+                    snapshot);
+            Metadata saved = snapshot == null ? null : snapshot.load();
+            if (saved != null) {
+                // Route by the snapshot right away and revalidate it in the background.
+                metadataCache.restore(saved);
+                client.setMetadataCache(metadataCache);
+                metadataCache.updateAsync();
+            } else {
+                metadataCache.update();
+                client.setMetadataCache(metadataCache);
+            }
+            client.scheduleMetadataRefresh();
 
             return client;
         }
@@ -1,7 +1,11 @@
 package io.liftbridge;
 
+import io.grpc.ManagedChannel;
+
+import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.function.Function;
 
 /**
  * Used to control the {@link Client} configuration.
@@ -14,11 +18,16 @@ class ClientOptions {
     private Set<String> brokers;
     private long keepAliveTimeMillis;
     private int maxConnsPerBroker;
+    private int maxStreamsPerChannel;
+    private long metadataRefreshIntervalMillis;
+    private Path metadataSnapshotPath;
+    private Function<String, ManagedChannel> channelFactory;
 
     ClientOptions() {
         brokers = new HashSet<>();
         keepAliveTimeMillis = DEFAULT_KEEP_ALIVE_TIME_MILLIS;
         maxConnsPerBroker = DEFAULT_MAX_CONNS_PER_BROKER;
+        channelFactory = Client::newChannel;
     }
 
     public void setBrokers(Set<String> brokers) {
@@ -44,4 +53,36 @@ class ClientOptions {
     public void setMaxConnsPerBroker(int maxConnsPerBroker) {
         this.maxConnsPerBroker = maxConnsPerBroker;
     }
+
+    public int getMaxStreamsPerChannel() {
+        return maxStreamsPerChannel;
+    }
+
+    public void setMaxStreamsPerChannel(int maxStreamsPerChannel) {
+        this.maxStreamsPerChannel = maxStreamsPerChannel;
+    }
+
+    public long getMetadataRefreshIntervalMillis() {
+        return metadataRefreshIntervalMillis;
+    }
+
+    public void setMetadataRefreshIntervalMillis(long metadataRefreshIntervalMillis) {
+        this.metadataRefreshIntervalMillis = metadataRefreshIntervalMillis;
+    }
+
+    public Path getMetadataSnapshotPath() {
+        return metadataSnapshotPath;
+    }
+
+    public void setMetadataSnapshotPath(Path metadataSnapshotPath) {
+        this.metadataSnapshotPath = metadataSnapshotPath;
+    }
+
+    public Function<String, ManagedChannel> getChannelFactory() {
+        return channelFactory;
+    }
+
+    public void setChannelFactory(Function<String, ManagedChannel> channelFactory) {
+        this.channelFactory = channelFactory;
+    }
 }
@@ -0,0 +1,35 @@
+package io.liftbridge;
+
+import java.util.List;
+
+/**
+ * {@link BatchMessageHandler} which commits the offset of the last message of each batch to an {@link OffsetStore}
+ * once the wrapped handler has returned. A batch whose handler throws is not committed.
+ */
+class CommittingBatchMessageHandler implements BatchMessageHandler {
+
+    private final BatchMessageHandler msgHandler;
+    private final String stream;
+    private final OffsetStore store;
+
+    CommittingBatchMessageHandler(BatchMessageHandler msgHandler, String stream, OffsetStore store) {
+        this.msgHandler = msgHandler;
+        this.stream = stream;
+        this.store = store;
+    }
+
+    @Override
+    public void onMessages(List<Message> msgs) {
+        msgHandler.onMessages(msgs);
+        if (!msgs.isEmpty()) {
+            Message last = msgs.get(msgs.size() - 1);
+            store.commit(stream, last.getPartition(), last.getOffset());
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        msgHandler.onError(t);
+    }
+
+}
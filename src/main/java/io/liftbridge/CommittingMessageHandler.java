@@ -0,0 +1,46 @@
+package io.liftbridge;
+
+/**
+ * {@link MessageHandler} which commits the offset of each message to an {@link OffsetStore} once the wrapped handler
+ * has returned. A message whose handler throws is not committed.
+ */
+class CommittingMessageHandler implements MessageHandler {
+
+    private final MessageHandler msgHandler;
+    private final String stream;
+    private final OffsetStore store;
+
+    private CommittingMessageHandler(MessageHandler msgHandler, String stream, OffsetStore store) {
+        this.msgHandler = msgHandler;
+        this.stream = stream;
+        this.store = store;
+    }
+
+    /**
+     * Wraps the given handler to commit to the offset store of the given options, if any.
+     *
+     * @param msgHandler {@code MessageHandler} to wrap
+     * @param stream     the stream subscribed to
+     * @param opts       {@link SubscriptionOptions} of the subscription
+     * @return wrapped handler, or the given handler if no offset store is set
+     */
+    static MessageHandler wrap(MessageHandler msgHandler, String stream, SubscriptionOptions opts) {
+        OffsetStore store = opts.getOffsetStore();
+        if (store == null) {
+            return msgHandler;
+        }
+        return new CommittingMessageHandler(msgHandler, stream, store);
+    }
+
+    @Override
+    public void onMessage(Message msg) {
+        msgHandler.onMessage(msg);
+        store.commit(stream, msg.getPartition(), msg.getOffset());
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        msgHandler.onError(t);
+    }
+
+}
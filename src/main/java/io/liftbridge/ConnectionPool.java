@@ -1,21 +1,53 @@
 package io.liftbridge;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Maintains a pool of Liftbridge connections. It limits the number of connections based on maxConns and closes unused
  * connections based on keepAliveTime.
+ * <p>
+ * Subscription streams either take a connection for themselves or, when maxStreamsPerChannel is set, share
+ * multiplexed connections which each carry up to that many concurrent streams.
  */
 class ConnectionPool {
 
     private final List<ManagedAPIClient> conns = new ArrayList<>();
+    private final Set<ManagedAPIClient> leased = new HashSet<>();
+    private final Map<ManagedAPIClient, Integer> streamCounts = new LinkedHashMap<>();
     private final int maxConns;
-    private final Map<ManagedAPIClient, Timer> timers = new HashMap<>();
+    private final int maxStreamsPerChannel;
+    private final Map<ManagedAPIClient, HashedWheelTimer.Timeout> timeouts = new HashMap<>();
     private final long keepAliveTimeMillis;
+    private final HashedWheelTimer timer;
+    private final boolean ownsTimer;
+    private ManagedAPIClient sharedConn;
+    private boolean closed;
 
+    /**
+     * Creates a pool with its own keep-alive timer, which is stopped when the pool is closed.
+     */
     ConnectionPool(int maxConns, long keepAliveTimeMillis) {
+        this(maxConns, keepAliveTimeMillis, 0,
+                new HashedWheelTimer("liftbridge-pool-timer", 10, TimeUnit.MILLISECONDS, 512), true);
+    }
+
+    /**
+     * Creates a pool whose keep-alive timeouts are scheduled on the given timer, which is shared with other pools and
+     * owned by the caller. If maxStreamsPerChannel is positive, streams acquired through {@link #acquireStream} share
+     * connections, otherwise each stream takes a connection of its own.
+     */
+    ConnectionPool(int maxConns, long keepAliveTimeMillis, int maxStreamsPerChannel, HashedWheelTimer timer) {
+        this(maxConns, keepAliveTimeMillis, maxStreamsPerChannel, timer, false);
+    }
+
+    private ConnectionPool(int maxConns, long keepAliveTimeMillis, int maxStreamsPerChannel, HashedWheelTimer timer,
+                           boolean ownsTimer) {
         this.maxConns = maxConns;
         this.keepAliveTimeMillis = keepAliveTimeMillis;
+        this.maxStreamsPerChannel = maxStreamsPerChannel;
+        this.timer = timer;
+        this.ownsTimer = ownsTimer;
     }
 
     /**
@@ -28,36 +60,145 @@ class ConnectionPool {
         ManagedAPIClient conn;
         if (conns.size() > 0) {
             conn = conns.remove(0);
-            Timer timer = timers.get(conn);
-            // Cancel the timer if there is one for this connection.
-            if (timer != null) {
-                timer.cancel();
-                timers.remove(conn);
+            // Cancel the keep-alive timeout if there is one for this connection.
+            HashedWheelTimer.Timeout timeout = timeouts.remove(conn);
+            if (timeout != null) {
+                timeout.cancel();
             }
         } else {
             conn = factory.newConnection();
         }
+        leased.add(conn);
         return conn;
     }
 
+    /**
+     * Returns a Liftbridge connection to carry a new subscription stream. With maxStreamsPerChannel set, this is the
+     * multiplexed connection with the fewest streams that still has room, or a new one if all are full. Otherwise it
+     * is an exclusive connection as returned by {@link #get}. The connection must be given back with
+     * {@link #releaseStream} once the stream ends.
+     *
+     * @param factory {@link ConnectionFactory} to create a new connection if needed
+     * @return {@link ManagedAPIClient}
+     */
+    synchronized ManagedAPIClient acquireStream(ConnectionFactory factory) {
+        if (maxStreamsPerChannel <= 0) {
+            return get(factory);
+        }
+        ManagedAPIClient conn = null;
+        int fewest = maxStreamsPerChannel;
+        for (Map.Entry<ManagedAPIClient, Integer> entry : streamCounts.entrySet()) {
+            if (entry.getValue() < fewest) {
+                conn = entry.getKey();
+                fewest = entry.getValue();
+            }
+        }
+        if (conn == null) {
+            conn = factory.newConnection();
+            fewest = 0;
+        } else if (fewest == 0) {
+            // The connection was idle, so cancel its keep-alive timeout.
+            HashedWheelTimer.Timeout timeout = timeouts.remove(conn);
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+        streamCounts.put(conn, fewest + 1);
+        return conn;
+    }
+
+    /**
+     * Gives back a connection acquired with {@link #acquireStream} after its stream ended. A multiplexed connection
+     * left without streams is closed once it has been idle for keepAliveTime, or right away if the pool is closed.
+     *
+     * @param conn {@link ManagedAPIClient} to give back
+     */
+    synchronized void releaseStream(ManagedAPIClient conn) {
+        Integer count = streamCounts.get(conn);
+        if (count == null) {
+            put(conn);
+            return;
+        }
+        if (count > 1) {
+            streamCounts.put(conn, count - 1);
+            return;
+        }
+        streamCounts.put(conn, 0);
+        if (closed) {
+            streamCounts.remove(conn);
+            conn.close();
+        } else if (keepAliveTimeMillis > 0) {
+            scheduleExpiry(conn);
+        }
+    }
+
+    /**
+     * Returns current channel and stream counts for this pool.
+     *
+     * @return {@link ConnectionStats}
+     */
+    synchronized ConnectionStats stats() {
+        int channels = conns.size() + leased.size() + streamCounts.size();
+        if (sharedConn != null) {
+            channels++;
+        }
+        int streams = leased.size();
+        for (int count : streamCounts.values()) {
+            streams += count;
+        }
+        return new ConnectionStats(channels, streams);
+    }
+
+    /**
+     * Returns the pool's shared Liftbridge connection, creating it with the provided factory if needed. Unlike
+     * connections handed out by {@link #get}, the shared connection is used concurrently by many callers, which suits
+     * unary RPCs such as publishes that gRPC multiplexes over the channel. It stays open until the pool is closed or
+     * it is reset.
+     *
+     * @param factory {@link ConnectionFactory} to create the shared connection if there is none
+     * @return {@link ManagedAPIClient}
+     */
+    synchronized ManagedAPIClient getShared(ConnectionFactory factory) {
+        if (sharedConn == null) {
+            sharedConn = factory.newConnection();
+        }
+        return sharedConn;
+    }
+
+    /**
+     * Returns whether the shared connection has been dialed, meaning RPCs such as publishes have been sent to this
+     * broker.
+     *
+     * @return true if there is a shared connection
+     */
+    synchronized boolean hasShared() {
+        return sharedConn != null;
+    }
+
+    /**
+     * Closes the given shared connection after it failed so the next call to {@link #getShared} dials a new one. Does
+     * nothing if the shared connection was already replaced.
+     *
+     * @param failed the shared connection that failed
+     */
+    synchronized void resetShared(ManagedAPIClient failed) {
+        if (sharedConn == failed) {
+            sharedConn = null;
+            failed.close();
+        }
+    }
+
     /**
      * Returns the given Liftbridge connection to the pool if there is capacity or closes it if there is not.
      *
      * @param conn {@link ManagedAPIClient} to return
      */
     synchronized void put(ManagedAPIClient conn) {
-        if (maxConns == 0 || conns.size() < maxConns) {
+        leased.remove(conn);
+        if (!closed && (maxConns == 0 || conns.size() < maxConns)) {
             conns.add(conn);
             if (keepAliveTimeMillis > 0) {
-                // Start timer to close conn if it's unused for keepAliveTime.
-                Timer timer = new Timer();
-                timer.schedule(new TimerTask() {
-                    @Override
-                    public void run() {
-                        connExpired(conn);
-                    }
-                }, keepAliveTimeMillis);
-                timers.put(conn, timer);
+                scheduleExpiry(conn);
             }
         } else {
             conn.close();
@@ -65,28 +206,64 @@ class ConnectionPool {
     }
 
     /**
-     * Cleans up the connection pool by closing all active connections and stopping all timers.
+     * Schedules a timeout to close conn if it's unused for keepAliveTime.
+     */
+    private void scheduleExpiry(ManagedAPIClient conn) {
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(expired -> connExpired(conn, expired),
+                keepAliveTimeMillis, TimeUnit.MILLISECONDS);
+        HashedWheelTimer.Timeout previous = timeouts.put(conn, timeout);
+        if (previous != null) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * Cleans up the connection pool by closing all idle connections and cancelling all keep-alive timeouts.
+     * Connections returned to the pool afterwards are closed right away, as are multiplexed connections once their
+     * last stream is released.
      */
     synchronized void close() {
+        closed = true;
         for (ManagedAPIClient conn : conns) {
             conn.close();
         }
         conns.clear();
-        for (Timer timer : timers.values()) {
-            timer.cancel();
+        Iterator<Map.Entry<ManagedAPIClient, Integer>> it = streamCounts.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<ManagedAPIClient, Integer> entry = it.next();
+            if (entry.getValue() == 0) {
+                entry.getKey().close();
+                it.remove();
+            }
+        }
+        if (sharedConn != null) {
+            sharedConn.close();
+            sharedConn = null;
+        }
+        for (HashedWheelTimer.Timeout timeout : timeouts.values()) {
+            timeout.cancel();
+        }
+        timeouts.clear();
+        if (ownsTimer) {
+            timer.stop();
         }
-        timers.clear();
     }
 
     /**
-     * Called when the keepAliveTime timer has fired for the given connection. This will close and remove the connection from the pool.
+     * Called when the keepAliveTime timeout has fired for the given idle connection. This will close and remove the connection from the pool.
+     * Does nothing if the connection was taken from the pool after the timeout fired but before this ran.
      *
-     * @param conn the expired connection to close and remove
+     * @param conn    the expired connection to close and remove
+     * @param timeout the timeout that fired
      */
-    private synchronized void connExpired(ManagedAPIClient conn) {
+    private synchronized void connExpired(ManagedAPIClient conn, HashedWheelTimer.Timeout timeout) {
+        if (timeouts.get(conn) != timeout) {
+            return;
+        }
+        timeouts.remove(conn);
         conns.remove(conn);
+        streamCounts.remove(conn);
         conn.close();
-        timers.remove(conn);
     }
 
     interface ConnectionFactory {
@@ -0,0 +1,36 @@
+package io.liftbridge;
+
+/**
+ * Point-in-time connection usage for a single broker, as returned by {@link Client#getConnectionStats()}. Useful for
+ * sizing {@link Client.Builder#withMaxStreamsPerChannel(int)}.
+ */
+public class ConnectionStats {
+
+    private final int channels;
+    private final int streams;
+
+    ConnectionStats(int channels, int streams) {
+        this.channels = channels;
+        this.streams = streams;
+    }
+
+    /**
+     * Returns the number of open gRPC channels to the broker, including idle pooled channels and the channel shared
+     * by publishes.
+     *
+     * @return open channel count
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Returns the number of active subscription streams to the broker.
+     *
+     * @return active stream count
+     */
+    public int getStreams() {
+        return streams;
+    }
+
+}
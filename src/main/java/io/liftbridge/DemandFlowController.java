@@ -0,0 +1,100 @@
+package io.liftbridge;
+
+import io.grpc.stub.ClientCallStreamObserver;
+
+/**
+ * {@link FlowController} which requests exactly as many messages from the broker as a downstream consumer has asked
+ * for with {@link #request}, so nothing is buffered on the client. Demand which has not been met yet carries over to
+ * the streams opened when resubscribing.
+ */
+class DemandFlowController implements FlowController {
+
+    // gRPC counts requested messages in an int, so outstanding requests are topped up once half of them arrived.
+    private static final int MAX_REQUESTED = Integer.MAX_VALUE;
+
+    private ClientCallStreamObserver<?> call;
+    private boolean ready;
+    private long demand;
+    private int requested;
+
+    @Override
+    public synchronized void start(ClientCallStreamObserver<?> call) {
+        call.disableAutoInboundFlowControl();
+        this.call = call;
+        // gRPC requests one message when the call starts, which covers the subscription handshake. Messages
+        // requested from a previous call are lost with it.
+        this.ready = false;
+        this.requested = 0;
+    }
+
+    @Override
+    public void handshake() {
+        ClientCallStreamObserver<?> call;
+        int n;
+        synchronized (this) {
+            ready = true;
+            call = this.call;
+            n = replenish();
+        }
+        request(call, n);
+    }
+
+    @Override
+    public void received(int bytes) {
+        ClientCallStreamObserver<?> call;
+        int n = 0;
+        synchronized (this) {
+            demand--;
+            requested--;
+            call = this.call;
+            if (requested < MAX_REQUESTED / 2) {
+                n = replenish();
+            }
+        }
+        request(call, n);
+    }
+
+    @Override
+    public void consumed(int bytes) {
+        // Demand is met once a message is delivered, not once it is handled.
+    }
+
+    /**
+     * Adds to the number of messages the consumer is ready for and requests them from the broker.
+     *
+     * @param n number of additional messages, must be positive
+     */
+    void request(long n) {
+        ClientCallStreamObserver<?> call;
+        int r;
+        synchronized (this) {
+            demand += n;
+            if (demand < 0) {
+                // Overflowed, which the Reactive Streams specification treats as unbounded demand.
+                demand = Long.MAX_VALUE;
+            }
+            call = this.call;
+            r = replenish();
+        }
+        request(call, r);
+    }
+
+    /**
+     * Returns the number of messages to request to cover the outstanding demand and counts them as requested.
+     */
+    private int replenish() {
+        if (!ready) {
+            return 0;
+        }
+        int n = (int) Math.min(demand - requested, MAX_REQUESTED - requested);
+        requested += n;
+        return n;
+    }
+
+    private static void request(ClientCallStreamObserver<?> call, int n) {
+        if (n > 0 && call != null) {
+            call.request(n);
+        }
+    }
+
+}
@@ -0,0 +1,239 @@
+package io.liftbridge;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link OffsetStore} which keeps offsets in a local file. Commits are applied in memory and written out in the
+ * background once the configured number of commits has accumulated or the commit interval has passed since the
+ * first unwritten commit, whichever comes first, so committing every message costs little more than a map update.
+ * <p>
+ * The file is replaced atomically: offsets are written to a temporary file which is synced to disk and then renamed
+ * over the previous one. A crash therefore loses at most the commits made since the last write, which only causes
+ * those messages to be consumed again.
+ */
+public class FileOffsetStore implements OffsetStore {
+
+    private static final int MAGIC = 0x4c424f53;
+    private static final int VERSION = 1;
+    private static final int DEFAULT_COMMIT_EVERY = 1000;
+    private static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 1000;
+
+    private final AtomicFile file;
+    private final int commitEvery;
+    private final long commitIntervalNanos;
+    private final ScheduledExecutorService writer;
+    private final Map<String, Map<Integer, Long>> offsets = new HashMap<>();
+    private int unwritten;
+    private ScheduledFuture<?> scheduledWrite;
+    private boolean closed;
+    private volatile IOException writeError;
+
+    /**
+     * Opens the store kept in the given file, writing out commits every 1000 commits or once a second.
+     *
+     * @param path file to keep offsets in, created on the first write if it doesn't exist
+     * @throws IOException if the existing file could not be read
+     */
+    public FileOffsetStore(Path path) throws IOException {
+        this(path, DEFAULT_COMMIT_EVERY, DEFAULT_COMMIT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Opens the store kept in the given file.
+     *
+     * @param path           file to keep offsets in, created on the first write if it doesn't exist
+     * @param commitEvery    number of commits which triggers a write
+     * @param commitInterval maximum time a commit stays unwritten
+     * @param unit           time unit of commit interval
+     * @throws IOException if the existing file could not be read
+     */
+    public FileOffsetStore(Path path, int commitEvery, long commitInterval, TimeUnit unit) throws IOException {
+        if (commitEvery < 1) {
+            throw new IllegalArgumentException("commitEvery must be positive");
+        }
+        if (commitInterval < 0) {
+            throw new IllegalArgumentException("commitInterval must not be negative");
+        }
+        this.file = new AtomicFile(path);
+        this.commitEvery = commitEvery;
+        this.commitIntervalNanos = unit.toNanos(commitInterval);
+        load();
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "liftbridge-offset-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public synchronized long getOffset(String stream, int partition) {
+        Map<Integer, Long> partitions = offsets.get(stream);
+        if (partitions == null) {
+            return -1;
+        }
+        Long offset = partitions.get(partition);
+        return offset == null ? -1 : offset;
+    }
+
+    @Override
+    public synchronized void commit(String stream, int partition, long offset) {
+        if (closed) {
+            return;
+        }
+        Map<Integer, Long> partitions = offsets.computeIfAbsent(stream, s -> new HashMap<>());
+        Long previous = partitions.get(partition);
+        if (previous != null && previous >= offset) {
+            return;
+        }
+        partitions.put(partition, offset);
+        unwritten++;
+        if (unwritten >= commitEvery) {
+            scheduleWrite(0);
+        } else if (scheduledWrite == null) {
+            scheduleWrite(commitIntervalNanos);
+        }
+    }
+
+    /**
+     * Writes out every commit made so far and waits for the file to be synced.
+     *
+     * @throws IOException if the file could not be written, including by an earlier background write
+     */
+    @Override
+    public void flush() throws IOException {
+        Future<?> write;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            write = writer.submit(this::write);
+        }
+        try {
+            write.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while flushing offsets", e);
+        } catch (ExecutionException e) {
+            throw new IOException("failed to flush offsets", e.getCause());
+        }
+        IOException error = writeError;
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Writes out every commit made so far and stops the background writer. Later commits are ignored.
+     *
+     * @throws IOException if the file could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            synchronized (this) {
+                closed = true;
+            }
+            writer.shutdown();
+        }
+    }
+
+    private void scheduleWrite(long delayNanos) {
+        if (scheduledWrite != null) {
+            if (delayNanos > 0 || scheduledWrite.getDelay(TimeUnit.NANOSECONDS) <= 0) {
+                return;
+            }
+            scheduledWrite.cancel(false);
+        }
+        scheduledWrite = writer.schedule(this::write, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Writes a snapshot of the offsets to the file. Only runs on the writer thread, so writes never overlap.
+     */
+    private void write() {
+        Map<String, Map<Integer, Long>> snapshot;
+        synchronized (this) {
+            scheduledWrite = null;
+            if (unwritten == 0 && Files.exists(file.getPath())) {
+                return;
+            }
+            unwritten = 0;
+            snapshot = new HashMap<>(offsets.size());
+            for (Map.Entry<String, Map<Integer, Long>> entry : offsets.entrySet()) {
+                snapshot.put(entry.getKey(), new HashMap<>(entry.getValue()));
+            }
+        }
+        try {
+            writeFile(snapshot);
+            writeError = null;
+        } catch (IOException e) {
+            writeError = e;
+            synchronized (this) {
+                // Retry with the next commit or flush.
+                unwritten++;
+            }
+        }
+    }
+
+    private void writeFile(Map<String, Map<Integer, Long>> snapshot) throws IOException {
+        file.write(out -> {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Map<Integer, Long>> stream : snapshot.entrySet()) {
+                out.writeUTF(stream.getKey());
+                out.writeInt(stream.getValue().size());
+                for (Map.Entry<Integer, Long> partition : stream.getValue().entrySet()) {
+                    out.writeInt(partition.getKey());
+                    out.writeLong(partition.getValue());
+                }
+            }
+        });
+    }
+
+    private void load() throws IOException {
+        Path path = file.getPath();
+        InputStream input;
+        try {
+            input = Files.newInputStream(path);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(input))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not an offset store file: " + path);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported offset store version " + version + ": " + path);
+            }
+            int streams = in.readInt();
+            for (int i = 0; i < streams; i++) {
+                String stream = in.readUTF();
+                int partitions = in.readInt();
+                Map<Integer, Long> streamOffsets = new HashMap<>(partitions);
+                for (int j = 0; j < partitions; j++) {
+                    streamOffsets.put(in.readInt(), in.readLong());
+                }
+                offsets.put(stream, streamOffsets);
+            }
+        }
+    }
+
+}
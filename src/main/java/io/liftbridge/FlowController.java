@@ -0,0 +1,53 @@
+package io.liftbridge;
+
+import io.grpc.stub.ClientCallStreamObserver;
+
+/**
+ * Manual inbound flow control for a subscription stream, deciding how many messages are requested from the broker.
+ * <p>
+ * The transport calls {@link #start} before the call starts, {@link #handshake} once the subscription is created and
+ * {@link #received} for every message after that, and the handler calls {@link #consumed} once it is done with a
+ * message.
+ */
+interface FlowController {
+
+    /**
+     * Creates a {@code FlowController} for the prefetch limits in the given options.
+     *
+     * @param opts {@link SubscriptionOptions} for the subscription
+     * @return {@code FlowController}, or null if no prefetch limit is set and gRPC's automatic flow control is used
+     */
+    static FlowController create(SubscriptionOptions opts) {
+        if (opts.getPrefetchCount() <= 0 && opts.getPrefetchBytes() <= 0) {
+            return null;
+        }
+        return new PrefetchFlowController(opts.getPrefetchCount(), opts.getPrefetchBytes());
+    }
+
+    /**
+     * Takes over inbound flow control of the given call. Must be called before the call starts.
+     *
+     * @param call the subscription's call
+     */
+    void start(ClientCallStreamObserver<?> call);
+
+    /**
+     * Records the subscription handshake and opens the window.
+     */
+    void handshake();
+
+    /**
+     * Records a message delivered by the transport and, if the window allows, requests another.
+     *
+     * @param bytes message size
+     */
+    void received(int bytes);
+
+    /**
+     * Records that a handler is done with a message and requests more messages if the window allows.
+     *
+     * @param bytes message size, as passed to {@link #received}
+     */
+    void consumed(int bytes);
+
+}
@@ -0,0 +1,73 @@
+package io.liftbridge;
+
+/**
+ * {@link Partitioner} which maps messages to partitions by hashing the message key, so messages with the same key
+ * always land on the same partition. Keys are hashed with 32-bit FNV-1a and the hash is reduced modulo the stream's
+ * partition count, which yields the same partitions as the Go client's key partitioner. A missing key is hashed as an
+ * empty key.
+ * <p>
+ * The partition count is read from the client's cached metadata. If the stream is not known, messages are mapped to
+ * the base (zeroth) partition. Partitioning neither locks nor allocates, so one instance can be shared by all
+ * publishing threads.
+ */
+public class KeyHashPartitioner implements Partitioner {
+
+    private static final int FNV_OFFSET_BASIS = 0x811c9dc5;
+    private static final int FNV_PRIME = 0x01000193;
+
+    /**
+     * Computes the partition number for a given message. Without metadata the partition count is unknown, so this
+     * always returns the base partition.
+     *
+     * @param stream name of the stream being published to
+     * @param key    message key
+     * @param value  message value
+     * @param opts   {@code MessageOptions}
+     * @return stream partition number
+     */
+    public int partition(String stream, byte[] key, byte[] value, MessageOptions opts) {
+        return partition(stream, key, value, null, opts);
+    }
+
+    /**
+     * Computes the partition number for a given message by hashing its key and reducing the hash modulo the number of
+     * partitions in the stream.
+     *
+     * @param stream   name of the stream being published to
+     * @param key      message key
+     * @param value    message value
+     * @param metadata cluster {@code Metadata}, or null if not known
+     * @param opts     {@code MessageOptions}
+     * @return stream partition number
+     */
+    @Override
+    public int partition(String stream, byte[] key, byte[] value, Metadata metadata, MessageOptions opts) {
+        if (metadata == null) {
+            return 0;
+        }
+        int partitions = metadata.getPartitionCountForStream(stream);
+        if (partitions == 0) {
+            return 0;
+        }
+        return Integer.remainderUnsigned(hash(key), partitions);
+    }
+
+    /**
+     * Computes the 32-bit FNV-1a hash of the given key.
+     *
+     * @param key key to hash, null is treated as empty
+     * @return key hash
+     */
+    static int hash(byte[] key) {
+        int hash = FNV_OFFSET_BASIS;
+        if (key == null) {
+            return hash;
+        }
+        for (byte b : key) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+}
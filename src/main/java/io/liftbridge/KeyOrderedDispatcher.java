@@ -0,0 +1,226 @@
+package io.liftbridge;
+
+import io.grpc.stub.ClientCallStreamObserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link MessageHandler} which runs another handler on a worker pool, concurrently for messages with different keys
+ * but in order for messages with the same key. Keys are hashed onto a fixed set of lanes, each of which handles its
+ * messages one at a time. Messages without a key are spread over all lanes.
+ * <p>
+ * Every received message is tracked with its partition's {@link OffsetTracker} until its handler returns, so the
+ * offset up to which a partition has been fully handled is known despite the reordering. That offset is committed to
+ * the offset store, if any, whenever it advances.
+ * <p>
+ * The number of messages in flight is bounded through the {@link FlowController} of each partition's subscription,
+ * which keeps one message requested from the broker while there is room and stops requesting once the maximum is
+ * reached, until a handler completes. The transport is never blocked, but each partition may deliver the one message
+ * it had already requested, so the maximum can be exceeded by up to one message per partition.
+ */
+class KeyOrderedDispatcher implements MessageHandler {
+
+    private final MessageHandler msgHandler;
+    private final SerializedExecutor[] lanes;
+    private final int maxInFlight;
+    private final Map<Integer, OffsetTracker> trackers = new ConcurrentHashMap<>();
+    private final Map<Integer, PartitionFlow> flows = new ConcurrentHashMap<>();
+    // Guarded by this, as is the state of every PartitionFlow.
+    private final List<PartitionFlow> paused = new ArrayList<>();
+    private int inFlight;
+    private final String stream;
+    private final OffsetStore store;
+
+    /**
+     * @param msgHandler {@code MessageHandler} to run on the worker pool
+     * @param opts       {@code ParallelOptions} configuring the worker pool
+     * @param stream     the stream subscribed to
+     * @param store      {@code OffsetStore} to commit completed offsets to, or null
+     */
+    KeyOrderedDispatcher(MessageHandler msgHandler, ParallelOptions opts, String stream, OffsetStore store) {
+        this.msgHandler = msgHandler;
+        this.stream = stream;
+        this.store = store;
+        this.lanes = new SerializedExecutor[opts.getKeyLanes()];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new SerializedExecutor(opts.getExecutor());
+        }
+        this.maxInFlight = opts.getMaxInFlight();
+    }
+
+    /**
+     * Returns the {@link FlowController} for the subscription to the given partition, which requests messages only
+     * while fewer than the maximum number are in flight.
+     *
+     * @param partition stream partition
+     * @return {@code FlowController} shared by the streams opened for the partition
+     */
+    FlowController flowController(int partition) {
+        PartitionFlow flow = new PartitionFlow();
+        flows.put(partition, flow);
+        return flow;
+    }
+
+    /**
+     * Hands the message to its lane and requests the partition's next message if there is still room, or pauses the
+     * partition until a handler completes otherwise.
+     */
+    @Override
+    public void onMessage(Message msg) {
+        PartitionFlow flow = flows.get(msg.getPartition());
+        ClientCallStreamObserver<?> call = null;
+        synchronized (this) {
+            inFlight++;
+            if (flow != null) {
+                if (inFlight < maxInFlight) {
+                    call = flow.next();
+                } else {
+                    flow.paused = true;
+                    paused.add(flow);
+                }
+            }
+        }
+        OffsetTracker tracker = trackers.computeIfAbsent(msg.getPartition(), p -> new OffsetTracker());
+        OffsetTracker.Entry entry = tracker.track(msg.getOffset());
+        try {
+            lane(msg).execute(() -> {
+                try {
+                    msgHandler.onMessage(msg);
+                } finally {
+                    if (tracker.complete(entry) && store != null) {
+                        store.commit(stream, msg.getPartition(), tracker.getCompletedOffset());
+                    }
+                    release();
+                }
+            });
+        } catch (RuntimeException e) {
+            // The worker pool rejected the message, so it will never complete.
+            release();
+            throw e;
+        }
+        request(call);
+    }
+
+    /**
+     * Records a completed message and, if that makes room, resumes the paused partitions. All of them are resumed
+     * since a partition with nothing more to read would otherwise hold up the others.
+     */
+    private void release() {
+        List<ClientCallStreamObserver<?>> calls = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            if (inFlight < maxInFlight && !paused.isEmpty()) {
+                for (PartitionFlow flow : paused) {
+                    flow.paused = false;
+                    calls.add(flow.next());
+                }
+                paused.clear();
+            }
+        }
+        for (ClientCallStreamObserver<?> call : calls) {
+            request(call);
+        }
+    }
+
+    private static void request(ClientCallStreamObserver<?> call) {
+        if (call != null) {
+            call.request(1);
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        msgHandler.onError(t);
+    }
+
+    /**
+     * Returns the highest offset of the given partition up to which every received message has been handled.
+     *
+     * @param partition stream partition
+     * @return completed offset, or -1 if there is none yet
+     */
+    long getCompletedOffset(int partition) {
+        OffsetTracker tracker = trackers.get(partition);
+        return tracker == null ? -1 : tracker.getCompletedOffset();
+    }
+
+    Map<Integer, OffsetTracker> getTrackers() {
+        return trackers;
+    }
+
+    private SerializedExecutor lane(Message msg) {
+        int hash;
+        if (msg.hasKey()) {
+            hash = msg.getKeyHash();
+            hash ^= hash >>> 16;
+        } else {
+            hash = (int) msg.getOffset();
+        }
+        return lanes[Math.floorMod(hash, lanes.length)];
+    }
+
+    /**
+     * {@link FlowController} of a partition's subscription, keeping one message requested while the partition isn't
+     * paused. Its state is guarded by the dispatcher.
+     */
+    private class PartitionFlow implements FlowController {
+
+        private ClientCallStreamObserver<?> call;
+        // Whether the current call's handshake arrived.
+        private boolean ready;
+        // Whether a message is requested on the current call and not received yet.
+        private boolean requested;
+        private boolean paused;
+
+        @Override
+        public void start(ClientCallStreamObserver<?> call) {
+            call.disableAutoInboundFlowControl();
+            synchronized (KeyOrderedDispatcher.this) {
+                // gRPC requests one message when the call starts, which covers the subscription handshake. A message
+                // requested from a previous call is lost with it.
+                this.call = call;
+                this.ready = false;
+                this.requested = false;
+            }
+        }
+
+        @Override
+        public void handshake() {
+            ClientCallStreamObserver<?> call;
+            synchronized (KeyOrderedDispatcher.this) {
+                ready = true;
+                call = next();
+            }
+            request(call);
+        }
+
+        @Override
+        public void received(int bytes) {
+            synchronized (KeyOrderedDispatcher.this) {
+                requested = false;
+            }
+            // The next message is requested once this one is counted as in flight.
+        }
+
+        @Override
+        public void consumed(int bytes) {
+            // Room is made once the worker pool has handled the message, not once it is handed over.
+        }
+
+        /**
+         * Returns the call to request the next message on and counts it as requested, or null if there is nothing
+         * to request.
+         */
+        private ClientCallStreamObserver<?> next() {
+            if (!ready || requested || paused) {
+                return null;
+            }
+            requested = true;
+            return call;
+        }
+    }
+
+}
@@ -16,6 +16,17 @@ class ManagedAPIClient extends APIClient {
         this.channel = channel;
     }
 
+    /**
+     * Starts connecting the gRPC channel if it is idle, rather than waiting for the first RPC to do so.
+     */
+    void connect() {
+        try {
+            channel.getState(true);
+        } catch (UnsupportedOperationException e) {
+            // The channel connects on the first RPC instead.
+        }
+    }
+
     /**
      * Closes the client connection by shutting down the gRPC channel and releasing any resources.
      */
@@ -2,6 +2,7 @@ package io.liftbridge;
 
 import io.liftbridge.proto.Api;
 
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
@@ -11,43 +12,25 @@ import com.google.protobuf.ByteString;
 
 /**
  * {@code Message} received from a Liftbridge stream.
+ * <p>
+ * A {@code Message} wraps the message as decoded off the wire and converts fields lazily, so a handler only pays for
+ * what it reads. {@link #getValueBuffer()} and {@link #getKeyBuffer()} return read-only views without copying, while
+ * {@link #getValue()}, {@link #getKey()}, {@link #getHeaders()} and {@link #getTimestamp()} materialize their result
+ * on first use.
  */
 public class Message {
 
-    private long offset;
+    private final Api.Message wireMsg;
     private byte[] key;
     private byte[] value;
-    private int partition;
-    private Instant timestamp;
-    private String stream;
-    private String subject;
-    private String replySubject;
-    private final HashMap<String, byte[]> headers = new HashMap<>();
+    private Map<String, byte[]> headers;
 
-    private Message() {
+    private Message(Api.Message wireMsg) {
+        this.wireMsg = wireMsg;
     }
 
     static Message fromProto(Api.Message wireMsg) {
-        Message msg = new Message();
-
-        long tsNanos = wireMsg.getTimestamp();
-
-        msg.offset = wireMsg.getOffset();
-        msg.key = wireMsg.getKey().toByteArray();
-        msg.value = wireMsg.getValue().toByteArray();
-        msg.timestamp = Instant.ofEpochSecond(
-                tsNanos / 1_000_000_000,
-                tsNanos % 1_000_000_000);
-        msg.stream = wireMsg.getStream();
-        msg.partition = wireMsg.getPartition();
-        msg.subject = wireMsg.getSubject();
-        msg.replySubject = wireMsg.getReplySubject();
-
-        for (Map.Entry<String, ByteString> entry : wireMsg.getHeadersMap().entrySet()) {
-            msg.headers.put(entry.getKey(), entry.getValue().toByteArray());
-        }
-
-        return msg;
+        return new Message(wireMsg);
     }
 
     /**
@@ -56,34 +39,118 @@ public class Message {
      * @return message offset
      */
     public long getOffset() {
-        return offset;
+        return wireMsg.getOffset();
     }
 
     /**
-     * Returns the optional key set on the message, useful for partitioning and stream compaction.
+     * Returns the optional key set on the message, useful for partitioning and stream compaction. The key is copied
+     * into an array on the first call.
      *
      * @return message key
      */
     public byte[] getKey() {
+        byte[] key = this.key;
+        if (key == null) {
+            key = wireMsg.getKey().toByteArray();
+            this.key = key;
+        }
         return key;
     }
 
     /**
-     * Returns the message payload.
+     * Returns a read-only view of the message key without copying it.
+     *
+     * @return message key buffer
+     */
+    public ByteBuffer getKeyBuffer() {
+        return wireMsg.getKey().asReadOnlyByteBuffer();
+    }
+
+    boolean hasKey() {
+        return !wireMsg.getKey().isEmpty();
+    }
+
+    /**
+     * Returns a hash of the message key's contents without copying it.
+     */
+    int getKeyHash() {
+        return wireMsg.getKey().hashCode();
+    }
+
+    /**
+     * Returns the message payload. The payload is copied into an array on the first call, use
+     * {@link #getValueBuffer()} to read it without copying.
      *
      * @return message payload
      */
     public byte[] getValue() {
+        byte[] value = this.value;
+        if (value == null) {
+            value = wireMsg.getValue().toByteArray();
+            this.value = value;
+        }
         return value;
     }
 
+    /**
+     * Returns a read-only view of the message payload without copying it.
+     *
+     * @return message payload buffer
+     */
+    public ByteBuffer getValueBuffer() {
+        return wireMsg.getValue().asReadOnlyByteBuffer();
+    }
+
+    /**
+     * Returns the size of the message payload in bytes.
+     *
+     * @return message payload size
+     */
+    public int getValueSize() {
+        return wireMsg.getValue().size();
+    }
+
+    /**
+     * Returns the combined size of the message key, payload and header values in bytes, without copying them.
+     *
+     * @return message size
+     */
+    int getSize() {
+        int size = wireMsg.getKey().size() + wireMsg.getValue().size();
+        for (ByteString header : wireMsg.getHeadersMap().values()) {
+            size += header.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the size of the message on the wire, as counted by a {@link FlowController}.
+     *
+     * @return serialized message size
+     */
+    int getSerializedSize() {
+        return wireMsg.getSerializedSize();
+    }
+
     /**
      * Returns the time the message was received by the server.
      *
      * @return message timestamp
      */
     public Instant getTimestamp() {
-        return timestamp;
+        long tsNanos = wireMsg.getTimestamp();
+        return Instant.ofEpochSecond(
+                tsNanos / 1_000_000_000,
+                tsNanos % 1_000_000_000);
+    }
+
+    /**
+     * Returns the time the message was received by the server as nanoseconds since the Unix epoch.
+     *
+     * @return message timestamp in nanoseconds
+     */
+    public long getTimestampNanos() {
+        return wireMsg.getTimestamp();
     }
 
     /**
@@ -92,7 +159,7 @@ public class Message {
      * @return message subject
      */
     public String getSubject() {
-        return subject;
+        return wireMsg.getSubject();
     }
 
     /**
@@ -101,16 +168,30 @@ public class Message {
      * @return message reply subject
      */
     public String getReplySubject() {
-        return replySubject;
+        return wireMsg.getReplySubject();
     }
 
     /**
-     * Returns the message key-value headers.
+     * Returns the message key-value headers. The headers are copied on the first call.
      *
      * @return message headers
      */
     public Map<String, byte[]> getHeaders() {
-        return Collections.unmodifiableMap(headers);
+        Map<String, byte[]> headers = this.headers;
+        if (headers == null) {
+            Map<String, ByteString> wireHeaders = wireMsg.getHeadersMap();
+            if (wireHeaders.isEmpty()) {
+                headers = Collections.emptyMap();
+            } else {
+                HashMap<String, byte[]> copy = new HashMap<>();
+                for (Map.Entry<String, ByteString> entry : wireHeaders.entrySet()) {
+                    copy.put(entry.getKey(), entry.getValue().toByteArray());
+                }
+                headers = Collections.unmodifiableMap(copy);
+            }
+            this.headers = headers;
+        }
+        return headers;
     }
 
     /**
@@ -119,7 +200,7 @@ public class Message {
      * @return message stream
      */
     public String getStream() {
-        return stream;
+        return wireMsg.getStream();
     }
 
     /**
@@ -128,7 +209,7 @@ public class Message {
      * @return message stream partition
      */
     public int getPartition() {
-        return partition;
+        return wireMsg.getPartition();
     }
 
 }
@@ -0,0 +1,147 @@
+package io.liftbridge;
+
+import io.grpc.stub.ClientCallStreamObserver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MessageHandler} which collects messages into batches for a {@link BatchMessageHandler}. A batch is handed
+ * over as soon as it holds the maximum number of messages or bytes, on the thread that added its last message, or
+ * once it has been open for the maximum wait time, on the given executor. Batches are handed over one at a time and
+ * in order, and the same list is reused for each of them.
+ * <p>
+ * With a {@link FlowController}, messages held in the open batch still count against the subscription's prefetch
+ * limits: they are only reported as consumed once their batch has been handed over.
+ */
+class MessageBatcher implements MessageHandler {
+
+    private final BatchMessageHandler handler;
+    private final BatchOptions opts;
+    private final HashedWheelTimer timer;
+    private final Executor executor;
+    private final FlowController flow;
+    private final List<Message> batch;
+    private final List<Message> batchView;
+    private int bytes;
+    private HashedWheelTimer.Timeout timeout;
+
+    /**
+     * @param handler  {@code BatchMessageHandler} to hand batches to
+     * @param opts     {@code BatchOptions} controlling when batches are closed
+     * @param timer    timer for closing batches after the maximum wait time
+     * @param executor executor handing over batches closed by the timer
+     * @param flow     {@code FlowController} of the subscription, or null
+     */
+    MessageBatcher(BatchMessageHandler handler, BatchOptions opts, HashedWheelTimer timer, Executor executor,
+                   FlowController flow) {
+        this.handler = handler;
+        this.opts = opts;
+        this.timer = timer;
+        this.executor = executor;
+        this.flow = flow;
+        this.batch = new ArrayList<>(Math.min(opts.getMaxMessages(), 1024));
+        this.batchView = Collections.unmodifiableList(batch);
+    }
+
+    @Override
+    public synchronized void onMessage(Message msg) {
+        batch.add(msg);
+        bytes += msg.getSize();
+        long maxWaitNanos = opts.getMaxWaitNanos();
+        if (maxWaitNanos == 0 || batch.size() >= opts.getMaxMessages() || bytes >= opts.getMaxBytes()) {
+            flush();
+            return;
+        }
+        if (timeout == null) {
+            try {
+                timeout = timer.newTimeout(this::expire, maxWaitNanos, TimeUnit.NANOSECONDS);
+            } catch (IllegalStateException e) {
+                // The client was closed while the subscription still delivers messages, so there is no timer to
+                // close the batch later.
+                flush();
+            }
+        } else if (timer.isStopped()) {
+            // The client was closed and the pending timeout was dropped with the timer.
+            flush();
+        }
+    }
+
+    @Override
+    public synchronized void onError(Throwable t) {
+        flush();
+        handler.onError(t);
+    }
+
+    /**
+     * Called on the timer thread once a batch has been open for the maximum wait time. Hands the batch over on the
+     * executor unless it was already handed over because it filled up.
+     */
+    private void expire(HashedWheelTimer.Timeout expired) {
+        executor.execute(() -> {
+            synchronized (this) {
+                if (timeout == expired) {
+                    flush();
+                }
+            }
+        });
+    }
+
+    private void flush() {
+        if (timeout != null) {
+            timeout.cancel();
+            timeout = null;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            handler.onMessages(batchView);
+        } finally {
+            if (flow != null) {
+                for (Message msg : batch) {
+                    flow.consumed(msg.getSerializedSize());
+                }
+            }
+            batch.clear();
+            bytes = 0;
+        }
+    }
+
+    /**
+     * Returns the {@link FlowController} for the subscription's streams, which passes everything on to the given one
+     * except for messages being consumed, since they are only consumed once their batch is handed over.
+     *
+     * @return {@code FlowController} for the subscription, or null if there is none
+     */
+    FlowController flowController() {
+        if (flow == null) {
+            return null;
+        }
+        return new FlowController() {
+            @Override
+            public void start(ClientCallStreamObserver<?> call) {
+                flow.start(call);
+            }
+
+            @Override
+            public void handshake() {
+                flow.handshake();
+            }
+
+            @Override
+            public void received(int bytes) {
+                flow.received(bytes);
+            }
+
+            @Override
+            public void consumed(int bytes) {
+                // Counted when the message's batch is handed over.
+            }
+        };
+    }
+
+}
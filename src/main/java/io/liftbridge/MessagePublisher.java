@@ -0,0 +1,138 @@
+package io.liftbridge;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+
+/**
+ * {@code MessagePublisher} is a Reactive Streams {@link Publisher} of the messages received on a stream partition.
+ * Each {@link Subscriber} gets its own ephemeral subscription, created as described in
+ * {@link Client#subscribe(String, SubscriptionOptions, MessageHandler)} and cancelled along with the subscriber's
+ * {@link org.reactivestreams.Subscription}.
+ * <p>
+ * Demand signalled by the subscriber is requested from the broker as is, so the broker only sends as many messages as
+ * the subscriber is ready for and none are buffered on the client. This replaces the prefetch limits of
+ * {@link SubscriptionOptions}. Subscription errors, including giving up resubscribing, are signalled with
+ * {@link Subscriber#onError}. Liftbridge subscriptions don't end on their own, so {@link Subscriber#onComplete} is
+ * never signalled. With an {@link OffsetStore} set in the options, a message is committed once {@code onNext}
+ * returns.
+ */
+public class MessagePublisher implements Publisher<Message> {
+
+    private final Client client;
+    private final String stream;
+    private final SubscriptionOptions opts;
+
+    /**
+     * Creates a {@code MessagePublisher} which subscribes through the given {@link Client}.
+     *
+     * @param client {@code Client} to subscribe with
+     * @param stream the stream to subscribe to
+     * @param opts   {@link SubscriptionOptions} for configuring the subscriptions
+     */
+    public MessagePublisher(Client client, String stream, SubscriptionOptions opts) {
+        this.client = client;
+        this.stream = stream;
+        this.opts = opts;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Message> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber must not be null");
+        }
+        DemandSubscription subscription = new DemandSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.start();
+    }
+
+    /**
+     * Links a {@link Subscriber} to its Liftbridge subscription.
+     */
+    private class DemandSubscription implements org.reactivestreams.Subscription, MessageHandler {
+        private final Subscriber<? super Message> subscriber;
+        private final DemandFlowController flow = new DemandFlowController();
+        private Subscription sub;
+        private boolean cancelled;
+        private boolean done;
+
+        DemandSubscription(Subscriber<? super Message> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void start() {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+            }
+            client.subscribeAsync(stream, opts, this, flow).whenComplete((sub, t) -> {
+                if (t != null) {
+                    onError(t);
+                    return;
+                }
+                boolean cancelled;
+                synchronized (this) {
+                    cancelled = this.cancelled;
+                    this.sub = sub;
+                }
+                if (cancelled) {
+                    sub.unsubscribe();
+                }
+            });
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                onError(new IllegalArgumentException("non-positive subscription request: " + n));
+                return;
+            }
+            flow.request(n);
+        }
+
+        @Override
+        public void cancel() {
+            Subscription sub;
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                sub = this.sub;
+            }
+            if (sub != null) {
+                sub.unsubscribe();
+            }
+        }
+
+        @Override
+        public synchronized void onMessage(Message msg) {
+            if (cancelled || done) {
+                return;
+            }
+            try {
+                subscriber.onNext(msg);
+            } catch (Throwable t) {
+                // A subscriber which throws is considered to have cancelled.
+                cancel();
+                throw t;
+            }
+            if (opts.getOffsetStore() != null) {
+                opts.getOffsetStore().commit(stream, msg.getPartition(), msg.getOffset());
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            synchronized (this) {
+                if (cancelled || done) {
+                    return;
+                }
+                done = true;
+                subscriber.onError(t);
+            }
+            cancel();
+        }
+    }
+
+}
@@ -23,6 +23,16 @@ public class Metadata {
         this.streams = streams;
     }
 
+    /**
+     * Returns a copy of this metadata which was last updated at the given time, such as when it was restored from a
+     * snapshot.
+     */
+    Metadata withLastUpdated(Instant lastUpdated) {
+        Metadata metadata = new Metadata(brokers, streams);
+        metadata.lastUpdated = lastUpdated;
+        return metadata;
+    }
+
     public Instant getLastUpdated() {
         return lastUpdated;
     }
@@ -37,16 +47,24 @@ public class Metadata {
         return Collections.unmodifiableSet(addrs);
     }
 
+    BrokerInfo getBroker(String id) {
+        return brokers.get(id);
+    }
+
     public StreamInfo getStream(String name) {
         return streams.get(name);
     }
 
+    Collection<StreamInfo> getStreams() {
+        return Collections.unmodifiableCollection(streams.values());
+    }
+
     int getPartitionCountForStream(String stream) {
         StreamInfo info = getStream(stream);
         if (info == null) {
             return 0;
         }
-        return info.getPartitions().size();
+        return info.getPartitionCount();
     }
 
     boolean hasStreamMetadata(String stream) {
@@ -4,97 +4,351 @@ import io.grpc.StatusRuntimeException;
 import io.liftbridge.proto.Api;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 class MetadataCache {
 
-    private Metadata metadata;
+    // Deadline of each FetchMetadata attempt, so a hung broker can't hold up a shared fetch and all of its callers.
+    private static final long FETCH_TIMEOUT_MILLIS = 10 * 1000;
+
+    // Routing table of the current metadata, replaced as a whole on every update so readers never lock.
+    private volatile RoutingTable routes;
     private final Set<String> bootstrapAddrs;
     private final DoResilientRPC<Api.FetchMetadataResponse> doRPC;
-    private final Random random = new Random();
+    // Fetch in progress, shared by everyone asking for a refresh until it completes.
+    private final AtomicReference<CompletableFuture<Metadata>> inFlight = new AtomicReference<>();
+    // Fetches of single streams in progress, by stream name.
+    private final Map<String, CompletableFuture<Metadata>> streamsInFlight = new ConcurrentHashMap<>();
+    private final MetadataListener listener;
+    private final MetadataSnapshot snapshot;
+    // Runs the blocking fetches, which may reconnect several times, away from the common pool. Threads are only kept
+    // while fetches are in progress.
+    private final ExecutorService fetcher = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "liftbridge-metadata-fetch");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     MetadataCache(Set<String> addrs, DoResilientRPC<Api.FetchMetadataResponse> doRPC) {
+        this(addrs, doRPC, diff -> {
+        });
+    }
+
+    MetadataCache(Set<String> addrs, DoResilientRPC<Api.FetchMetadataResponse> doRPC, MetadataListener listener) {
+        this(addrs, doRPC, listener, null);
+    }
+
+    /**
+     * @param addrs    bootstrap broker addresses
+     * @param doRPC    executes the metadata RPCs
+     * @param listener {@code MetadataListener} called with the changes of each update, in order, while the cache is
+     *                 locked, so it must hand the changes off rather than act on them
+     * @param snapshot {@code MetadataSnapshot} to save changed metadata to, or null
+     */
+    MetadataCache(Set<String> addrs, DoResilientRPC<Api.FetchMetadataResponse> doRPC, MetadataListener listener,
+                  MetadataSnapshot snapshot) {
         this.bootstrapAddrs = new HashSet<>(addrs);
         this.doRPC = doRPC;
-        this.metadata = new Metadata();
+        this.listener = listener;
+        this.snapshot = snapshot;
+        this.routes = RoutingTable.build(new Metadata(), bootstrapAddrs);
+    }
+
+    /**
+     * Routes by the given metadata, such as one restored from a snapshot, until the next update replaces it.
+     *
+     * @param metadata {@link Metadata} to route by
+     */
+    synchronized void restore(Metadata metadata) {
+        routes = RoutingTable.build(metadata, bootstrapAddrs, routes);
+    }
+
+    /**
+     * Stops fetching metadata and saving metadata snapshots. Later updates fail.
+     */
+    void close() {
+        fetcher.shutdown();
+        if (snapshot != null) {
+            snapshot.close();
+        }
     }
 
+    /**
+     * Returns the bootstrap addresses and the addresses of all known brokers.
+     *
+     * @return unmodifiable set of broker addresses
+     */
     Set<String> getAddrs() {
-        Set<String> addrs = new HashSet<>(bootstrapAddrs);
-        addrs.addAll(getMetadata().getAddrs());
-        return addrs;
+        return routes.getAddrs();
     }
 
+    /**
+     * Returns the address of the broker to use for the given stream partition without locking or allocating.
+     *
+     * @param streamName     stream name
+     * @param partitionId    partition ID
+     * @param readISRReplica whether to pick a random ISR replica rather than the leader
+     * @return broker address, or null if the partition or its leader is unknown
+     */
     String getAddr(String streamName, int partitionId, boolean readISRReplica) {
-        Metadata meta = getMetadata();
-        StreamInfo stream = meta.getStream(streamName);
-        if (stream == null) {
-            return null;
-        }
-        PartitionInfo partition = stream.getPartition(partitionId);
-        if (partition == null) {
-            return null;
-        }
-        // Request to subscribe to a random ISR replica.
-        if (readISRReplica) {
-            Set<BrokerInfo> isr = partition.getISR();
-            int size = isr.size();
-            int i = 0;
-            int item = random.nextInt(size);
-            for (BrokerInfo broker : isr) {
-                if (i == item) {
-                    return broker.getAddr();
-                }
-                i++;
+        return routes.getAddr(streamName, partitionId, readISRReplica);
+    }
+
+    Metadata getMetadata() {
+        return routes.getMetadata();
+    }
+
+    /**
+     * Fetches the latest metadata from the cluster, blocking until it arrives. Joins a fetch already in progress
+     * rather than starting another.
+     *
+     * @return updated {@link Metadata}
+     * @throws StatusRuntimeException gRPC exception
+     */
+    Metadata update() throws StatusRuntimeException {
+        return join(updateAsync());
+    }
+
+    /**
+     * Fetches the latest metadata of the given stream from the cluster, blocking until it arrives, and merges it into
+     * the current metadata. Joins a fetch already in progress for the stream or for the whole cluster rather than
+     * starting another.
+     *
+     * @param stream stream name
+     * @return updated {@link Metadata}, without the stream if it doesn't exist
+     * @throws StatusRuntimeException gRPC exception
+     */
+    Metadata update(String stream) throws StatusRuntimeException {
+        return join(updateAsync(stream));
+    }
+
+    /**
+     * Fetches the latest metadata from the cluster in the background. Concurrent callers share a single fetch, so a
+     * burst of refreshes, such as from every subscription of a failed broker, costs one RPC. A caller arriving after
+     * a fetch completed starts a new one.
+     *
+     * @return future updated {@link Metadata}, failed with a {@link StatusRuntimeException} on gRPC errors
+     */
+    CompletableFuture<Metadata> updateAsync() {
+        CompletableFuture<Metadata> future = new CompletableFuture<>();
+        while (true) {
+            CompletableFuture<Metadata> current = inFlight.get();
+            if (current != null) {
+                return current;
             }
+            if (inFlight.compareAndSet(null, future)) {
+                break;
+            }
+        }
+        fetchAsync(Collections.emptyList(), future, () -> inFlight.set(null));
+        return future;
+    }
+
+    /**
+     * Fetches the latest metadata of the given stream in the background and merges it into the current metadata,
+     * leaving other streams as they are. This keeps a lookup miss on a cluster with many streams from downloading
+     * them all. Concurrent callers for the same stream share a single fetch, and a fetch of the whole cluster in
+     * progress is joined instead.
+     *
+     * @param stream stream name
+     * @return future updated {@link Metadata}, failed with a {@link StatusRuntimeException} on gRPC errors
+     */
+    CompletableFuture<Metadata> updateAsync(String stream) {
+        CompletableFuture<Metadata> future = new CompletableFuture<>();
+        CompletableFuture<Metadata> current = inFlight.get();
+        if (current != null) {
+            return current;
         }
-        BrokerInfo leader = partition.getLeader();
-        if (leader == null) {
-            return null;
+        current = streamsInFlight.putIfAbsent(stream, future);
+        if (current != null) {
+            return current;
         }
-        return leader.getAddr();
+        fetchAsync(Collections.singletonList(stream), future, () -> streamsInFlight.remove(stream, future));
+        return future;
     }
 
-    synchronized Metadata getMetadata() {
-        return metadata;
+    /**
+     * Runs a fetch on the cache's fetch threads and completes the future with its result.
+     *
+     * @param streams streams to fetch, or empty for all of them
+     * @param future  future to complete
+     * @param done    stops sharing the fetch, called before the future completes
+     */
+    private void fetchAsync(List<String> streams, CompletableFuture<Metadata> future, Runnable done) {
+        try {
+            fetcher.execute(() -> {
+                Metadata updated = null;
+                Throwable error = null;
+                try {
+                    updated = fetch(streams);
+                } catch (Throwable t) {
+                    error = t;
+                }
+                // Callers reacting to the result may need a fresh fetch, so stop sharing this one first.
+                done.run();
+                if (error != null) {
+                    future.completeExceptionally(error);
+                } else {
+                    future.complete(updated);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The client was closed.
+            done.run();
+            future.completeExceptionally(new IllegalStateException("client is closed", e));
+        }
     }
 
-    Metadata update() throws StatusRuntimeException {
-        Api.FetchMetadataResponse resp = doRPC.execute(APIClient::fetchMetadata);
+    private Metadata fetch(List<String> streams) throws StatusRuntimeException {
+        Api.FetchMetadataResponse resp = doRPC.execute(
+                client -> client.fetchMetadata(streams, FETCH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        // Merges are serialized so that concurrent fetches of different streams don't drop each other's results.
+        synchronized (this) {
+            RoutingTable current = routes;
+            Metadata updated = merge(current.getMetadata(), resp, streams);
+            routes = RoutingTable.build(updated, bootstrapAddrs, current);
+            MetadataDiff diff = MetadataDiff.compute(current.getMetadata(), updated);
+            if (!diff.isEmpty()) {
+                listener.onMetadataChange(diff);
+            }
+            if (snapshot != null && (!diff.isEmpty() || !current.getMetadata().getAddrs().equals(updated.getAddrs()))) {
+                snapshot.save(updated);
+            }
+            return updated;
+        }
+    }
 
+    /**
+     * Builds the metadata resulting from a fetch. Brokers, partitions and streams which didn't change are reused
+     * from the current metadata, so the routing table can reuse their routes too.
+     *
+     * @param current current {@link Metadata}
+     * @param resp    fetch response
+     * @param fetched streams which were fetched, or empty if all of them were
+     * @return updated {@link Metadata}
+     */
+    static Metadata merge(Metadata current, Api.FetchMetadataResponse resp, List<String> fetched) {
         Map<String, BrokerInfo> brokers = new HashMap<>();
         for (Api.Broker broker : resp.getBrokersList()) {
-            brokers.put(broker.getId(), new BrokerInfo(broker.getId(), broker.getHost(), broker.getPort()));
+            BrokerInfo info = current.getBroker(broker.getId());
+            if (info == null || !info.getHost().equals(broker.getHost()) || info.getPort() != broker.getPort()) {
+                info = new BrokerInfo(broker.getId(), broker.getHost(), broker.getPort());
+            }
+            brokers.put(broker.getId(), info);
         }
 
         Map<String, StreamInfo> streams = new HashMap<>();
-        for (Api.StreamMetadata streamMetadata : resp.getMetadataList()) {
-            Map<Integer, PartitionInfo> partitions = new HashMap<>();
-            for (Api.PartitionMetadata partitionMetadata : streamMetadata.getPartitionsMap().values()) {
-                Set<BrokerInfo> replicas = new HashSet<>();
-                for (String replica : partitionMetadata.getReplicasList()) {
-                    replicas.add(brokers.get(replica));
-                }
-                Set<BrokerInfo> isr = new HashSet<>();
-                for (String replica : partitionMetadata.getIsrList()) {
-                    isr.add(brokers.get(replica));
+        if (!fetched.isEmpty()) {
+            // Keep the streams which weren't fetched, and drop the fetched ones in case they no longer exist. If a
+            // broker moved or is gone, kept streams are moved onto the fetched brokers, so they don't route to a
+            // broker's old address. Otherwise they already point at the fetched brokers.
+            boolean brokersChanged = false;
+            for (BrokerInfo broker : current.getBrokers()) {
+                if (brokers.get(broker.getId()) != broker) {
+                    brokersChanged = true;
+                    break;
                 }
-                PartitionInfo partition = new PartitionInfo(
-                        partitionMetadata.getId(),
-                        brokers.get(partitionMetadata.getLeader()),
-                        replicas,
-                        isr
-                );
-                partitions.put(partitionMetadata.getId(), partition);
             }
-            StreamInfo stream = new StreamInfo(streamMetadata.getName(), streamMetadata.getSubject(), partitions);
+            for (StreamInfo stream : current.getStreams()) {
+                streams.put(stream.getName(), brokersChanged ? rebind(stream, brokers) : stream);
+            }
+            for (String stream : fetched) {
+                streams.remove(stream);
+            }
+        }
+        for (Api.StreamMetadata streamMetadata : resp.getMetadataList()) {
+            if (streamMetadata.getError() != Api.StreamMetadata.Error.OK) {
+                continue;
+            }
+            StreamInfo stream = streamInfo(streamMetadata, brokers, current.getStream(streamMetadata.getName()));
             streams.put(streamMetadata.getName(), stream);
         }
 
-        Metadata updated = new Metadata(brokers, streams);
-        synchronized (this) {
-            this.metadata = updated;
+        return new Metadata(brokers, streams);
+    }
+
+    private static StreamInfo streamInfo(Api.StreamMetadata streamMetadata, Map<String, BrokerInfo> brokers,
+                                         StreamInfo previous) {
+        boolean changed = previous == null
+                || !previous.getSubject().equals(streamMetadata.getSubject())
+                || previous.getPartitionCount() != streamMetadata.getPartitionsCount();
+        Map<Integer, PartitionInfo> partitions = new HashMap<>();
+        for (Api.PartitionMetadata partitionMetadata : streamMetadata.getPartitionsMap().values()) {
+            Set<BrokerInfo> replicas = new HashSet<>();
+            for (String replica : partitionMetadata.getReplicasList()) {
+                replicas.add(brokers.get(replica));
+            }
+            Set<BrokerInfo> isr = new HashSet<>();
+            for (String replica : partitionMetadata.getIsrList()) {
+                isr.add(brokers.get(replica));
+            }
+            BrokerInfo leader = brokers.get(partitionMetadata.getLeader());
+            PartitionInfo partition = previous == null ? null : previous.getPartition(partitionMetadata.getId());
+            // Brokers are reused unless they moved, so comparing them by identity also catches moved brokers.
+            if (partition == null || partition.getLeader() != leader || !partition.getReplicas().equals(replicas)
+                    || !partition.getISR().equals(isr)) {
+                partition = new PartitionInfo(partitionMetadata.getId(), leader, replicas, isr);
+                changed = true;
+            }
+            partitions.put(partitionMetadata.getId(), partition);
+        }
+        if (!changed) {
+            return previous;
+        }
+        return new StreamInfo(streamMetadata.getName(), streamMetadata.getSubject(), partitions);
+    }
+
+    /**
+     * Points the partitions of a stream which wasn't fetched at the given brokers, looking them up by ID. Brokers
+     * are reused unless they moved, so the stream is returned as it is unless one of its brokers moved or is gone.
+     */
+    private static StreamInfo rebind(StreamInfo stream, Map<String, BrokerInfo> brokers) {
+        boolean changed = false;
+        Map<Integer, PartitionInfo> partitions = new HashMap<>();
+        for (PartitionInfo partition : stream.getPartitions().values()) {
+            Set<BrokerInfo> replicas = rebind(partition.getReplicas(), brokers);
+            Set<BrokerInfo> isr = rebind(partition.getISR(), brokers);
+            BrokerInfo leader = partition.getLeader() == null ? null : brokers.get(partition.getLeader().getId());
+            if (partition.getLeader() != leader || !partition.getReplicas().equals(replicas)
+                    || !partition.getISR().equals(isr)) {
+                partition = new PartitionInfo(partition.getId(), leader, replicas, isr);
+                changed = true;
+            }
+            partitions.put(partition.getId(), partition);
+        }
+        if (!changed) {
+            return stream;
+        }
+        return new StreamInfo(stream.getName(), stream.getSubject(), partitions);
+    }
+
+    private static Set<BrokerInfo> rebind(Set<BrokerInfo> replicas, Map<String, BrokerInfo> brokers) {
+        Set<BrokerInfo> rebound = new HashSet<>();
+        for (BrokerInfo replica : replicas) {
+            rebound.add(replica == null ? null : brokers.get(replica.getId()));
+        }
+        return rebound;
+    }
+
+    private static Metadata join(CompletableFuture<Metadata> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
         }
-        return updated;
     }
 
     interface DoResilientRPC<T> {
@@ -0,0 +1,209 @@
+package io.liftbridge;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@code MetadataDiff} describes how the cluster metadata changed between two snapshots: partitions whose leader or
+ * ISR changed, partitions which were added, and streams which were removed. The partitions of a newly created stream
+ * are reported as added.
+ */
+public class MetadataDiff {
+
+    private final Metadata previous;
+    private final Metadata current;
+    private final List<PartitionChange> leaderChanges;
+    private final List<PartitionChange> isrChanges;
+    private final List<PartitionChange> addedPartitions;
+    private final List<StreamInfo> removedStreams;
+
+    private MetadataDiff(Metadata previous, Metadata current, List<PartitionChange> leaderChanges,
+                         List<PartitionChange> isrChanges, List<PartitionChange> addedPartitions,
+                         List<StreamInfo> removedStreams) {
+        this.previous = previous;
+        this.current = current;
+        this.leaderChanges = Collections.unmodifiableList(leaderChanges);
+        this.isrChanges = Collections.unmodifiableList(isrChanges);
+        this.addedPartitions = Collections.unmodifiableList(addedPartitions);
+        this.removedStreams = Collections.unmodifiableList(removedStreams);
+    }
+
+    /**
+     * Compares two metadata snapshots. Streams and partitions which are the same objects in both are skipped
+     * without looking at their contents, so comparing snapshots which share most of their streams is cheap.
+     *
+     * @param previous {@link Metadata} before the update
+     * @param current  {@link Metadata} after the update
+     * @return {@code MetadataDiff} between the snapshots
+     */
+    static MetadataDiff compute(Metadata previous, Metadata current) {
+        List<PartitionChange> leaderChanges = new ArrayList<>();
+        List<PartitionChange> isrChanges = new ArrayList<>();
+        List<PartitionChange> addedPartitions = new ArrayList<>();
+        List<StreamInfo> removedStreams = new ArrayList<>();
+
+        for (StreamInfo stream : current.getStreams()) {
+            StreamInfo before = previous.getStream(stream.getName());
+            if (before == stream) {
+                continue;
+            }
+            for (PartitionInfo partition : stream.getPartitions().values()) {
+                PartitionInfo old = before == null ? null : before.getPartition(partition.getId());
+                if (old == partition) {
+                    continue;
+                }
+                PartitionChange change = new PartitionChange(stream.getName(), partition.getId(), old, partition);
+                if (old == null) {
+                    addedPartitions.add(change);
+                    continue;
+                }
+                if (!sameBroker(old.getLeader(), partition.getLeader())) {
+                    leaderChanges.add(change);
+                }
+                if (!addrs(old.getISR()).equals(addrs(partition.getISR()))) {
+                    isrChanges.add(change);
+                }
+            }
+        }
+        for (StreamInfo stream : previous.getStreams()) {
+            if (current.getStream(stream.getName()) == null) {
+                removedStreams.add(stream);
+            }
+        }
+
+        return new MetadataDiff(previous, current, leaderChanges, isrChanges, addedPartitions, removedStreams);
+    }
+
+    private static boolean sameBroker(BrokerInfo a, BrokerInfo b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+        return a.getId().equals(b.getId()) && a.getAddr().equals(b.getAddr());
+    }
+
+    private static Set<String> addrs(Set<BrokerInfo> brokers) {
+        Set<String> addrs = new HashSet<>();
+        for (BrokerInfo broker : brokers) {
+            if (broker != null) {
+                addrs.add(broker.getAddr());
+            }
+        }
+        return addrs;
+    }
+
+    /**
+     * Returns the metadata before the update.
+     *
+     * @return previous {@link Metadata}
+     */
+    public Metadata getPrevious() {
+        return previous;
+    }
+
+    /**
+     * Returns the metadata after the update.
+     *
+     * @return current {@link Metadata}
+     */
+    public Metadata getCurrent() {
+        return current;
+    }
+
+    /**
+     * Returns the partitions whose leader changed, including partitions which lost their leader.
+     *
+     * @return unmodifiable list of {@link PartitionChange}
+     */
+    public List<PartitionChange> getLeaderChanges() {
+        return leaderChanges;
+    }
+
+    /**
+     * Returns the partitions whose in-sync replica set changed.
+     *
+     * @return unmodifiable list of {@link PartitionChange}
+     */
+    public List<PartitionChange> getIsrChanges() {
+        return isrChanges;
+    }
+
+    /**
+     * Returns the partitions which were added, whose previous {@link PartitionInfo} is null.
+     *
+     * @return unmodifiable list of {@link PartitionChange}
+     */
+    public List<PartitionChange> getAddedPartitions() {
+        return addedPartitions;
+    }
+
+    /**
+     * Returns the streams which were removed, as they were before the update.
+     *
+     * @return unmodifiable list of {@link StreamInfo}
+     */
+    public List<StreamInfo> getRemovedStreams() {
+        return removedStreams;
+    }
+
+    /**
+     * Returns whether nothing this diff describes changed.
+     *
+     * @return true if there are no changes
+     */
+    public boolean isEmpty() {
+        return leaderChanges.isEmpty() && isrChanges.isEmpty() && addedPartitions.isEmpty()
+                && removedStreams.isEmpty();
+    }
+
+    /**
+     * {@code PartitionChange} is a change to a single stream partition.
+     */
+    public static class PartitionChange {
+
+        private final String stream;
+        private final int partitionId;
+        private final PartitionInfo previous;
+        private final PartitionInfo current;
+
+        PartitionChange(String stream, int partitionId, PartitionInfo previous, PartitionInfo current) {
+            this.stream = stream;
+            this.partitionId = partitionId;
+            this.previous = previous;
+            this.current = current;
+        }
+
+        public String getStream() {
+            return stream;
+        }
+
+        public int getPartitionId() {
+            return partitionId;
+        }
+
+        /**
+         * Returns the partition before the change.
+         *
+         * @return previous {@link PartitionInfo}, or null if the partition was added
+         */
+        public PartitionInfo getPrevious() {
+            return previous;
+        }
+
+        /**
+         * Returns the partition after the change.
+         *
+         * @return current {@link PartitionInfo}
+         */
+        public PartitionInfo getCurrent() {
+            return current;
+        }
+
+    }
+
+}
@@ -0,0 +1,19 @@
+package io.liftbridge;
+
+/**
+ * Listener for changes to the cluster metadata known to a {@link Client}, registered with
+ * {@link Client#addMetadataListener}. It is called after each metadata refresh which changed a partition leader or
+ * ISR, added partitions or removed streams, whether the refresh was made on demand or in the background.
+ */
+public interface MetadataListener {
+
+    /**
+     * Called with the changes made by a metadata refresh. Calls are made one at a time, in the order the refreshes
+     * completed, off the thread which made the refresh. By the time of the call, the client already routes
+     * publishes and subscriptions by the new metadata.
+     *
+     * @param diff {@link MetadataDiff} between the previous and the new metadata
+     */
+    void onMetadataChange(MetadataDiff diff);
+
+}
@@ -0,0 +1,175 @@
+package io.liftbridge;
+
+import io.liftbridge.proto.Api;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Copy of the cluster {@link Metadata} kept in a local file, so a restarting client can route publishes and
+ * subscriptions right away instead of waiting for the cluster to answer a metadata request.
+ * <p>
+ * The metadata is stored in the form of the {@code FetchMetadataResponse} it came from, which refers to brokers by
+ * ID and is compact. Saving is done in the background, with only the latest metadata written if several saves pile
+ * up, and the file is replaced atomically like the one of {@link FileOffsetStore}. Saving is best effort: a failed
+ * write leaves the previous snapshot in place until the next save.
+ * <p>
+ * The snapshot also records the bootstrap broker addresses of the client which saved it, and is ignored by a client
+ * bootstrapped from other addresses, so a file shared by mistake never routes a client to another cluster.
+ */
+class MetadataSnapshot {
+
+    private static final int MAGIC = 0x4c424d53;
+    private static final int VERSION = 2;
+
+    private final AtomicFile file;
+    private final Set<String> bootstrapAddrs;
+    private final ExecutorService writer;
+    // Latest metadata waiting to be written, taken by the write that picks it up.
+    private final AtomicReference<Metadata> pending = new AtomicReference<>();
+
+    /**
+     * @param path           file to keep the snapshot in, created on the first save if it doesn't exist
+     * @param bootstrapAddrs bootstrap broker addresses of the client
+     */
+    MetadataSnapshot(Path path, Set<String> bootstrapAddrs) {
+        this.file = new AtomicFile(path);
+        this.bootstrapAddrs = new TreeSet<>(bootstrapAddrs);
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "liftbridge-metadata-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Reads the snapshot. A missing or unreadable snapshot, or one saved by a client with other bootstrap addresses,
+     * is not an error, since the metadata can always be fetched from the cluster instead.
+     *
+     * @return {@link Metadata} as of when the snapshot was saved, or null if there is no usable snapshot
+     */
+    Metadata load() {
+        InputStream input;
+        try {
+            input = Files.newInputStream(file.getPath());
+        } catch (IOException e) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(input))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            int addrs = in.readInt();
+            Set<String> savedAddrs = new HashSet<>();
+            for (int i = 0; i < addrs; i++) {
+                savedAddrs.add(in.readUTF());
+            }
+            if (!savedAddrs.equals(bootstrapAddrs)) {
+                return null;
+            }
+            Instant lastUpdated = Instant.ofEpochMilli(in.readLong());
+            Api.FetchMetadataResponse resp = Api.FetchMetadataResponse.parseFrom(in);
+            return MetadataCache.merge(new Metadata(), resp, Collections.emptyList()).withLastUpdated(lastUpdated);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Saves the given metadata in the background.
+     *
+     * @param metadata {@link Metadata} to save
+     */
+    void save(Metadata metadata) {
+        if (pending.getAndSet(metadata) != null) {
+            // A write is already scheduled and will pick up this metadata.
+            return;
+        }
+        try {
+            writer.execute(this::write);
+        } catch (RejectedExecutionException e) {
+            // Closed.
+        }
+    }
+
+    /**
+     * Stops the background writer once a save in progress, if any, is written.
+     */
+    void close() {
+        writer.shutdown();
+    }
+
+    private void write() {
+        Metadata metadata = pending.getAndSet(null);
+        if (metadata == null) {
+            return;
+        }
+        try {
+            writeFile(metadata);
+        } catch (IOException e) {
+            // Best effort, the next save tries again.
+        }
+    }
+
+    private void writeFile(Metadata metadata) throws IOException {
+        file.write(out -> {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(bootstrapAddrs.size());
+            for (String addr : bootstrapAddrs) {
+                out.writeUTF(addr);
+            }
+            out.writeLong(metadata.getLastUpdated().toEpochMilli());
+            toProto(metadata).writeTo(out);
+        });
+    }
+
+    private static Api.FetchMetadataResponse toProto(Metadata metadata) {
+        Api.FetchMetadataResponse.Builder resp = Api.FetchMetadataResponse.newBuilder();
+        for (BrokerInfo broker : metadata.getBrokers()) {
+            resp.addBrokers(Api.Broker.newBuilder()
+                    .setId(broker.getId())
+                    .setHost(broker.getHost())
+                    .setPort(broker.getPort()));
+        }
+        for (StreamInfo stream : metadata.getStreams()) {
+            Api.StreamMetadata.Builder streamMetadata = Api.StreamMetadata.newBuilder()
+                    .setName(stream.getName())
+                    .setSubject(stream.getSubject());
+            for (PartitionInfo partition : stream.getPartitions().values()) {
+                Api.PartitionMetadata.Builder partitionMetadata = Api.PartitionMetadata.newBuilder()
+                        .setId(partition.getId());
+                if (partition.getLeader() != null) {
+                    partitionMetadata.setLeader(partition.getLeader().getId());
+                }
+                for (BrokerInfo replica : partition.getReplicas()) {
+                    if (replica != null) {
+                        partitionMetadata.addReplicas(replica.getId());
+                    }
+                }
+                for (BrokerInfo replica : partition.getISR()) {
+                    if (replica != null) {
+                        partitionMetadata.addIsr(replica.getId());
+                    }
+                }
+                streamMetadata.putPartitions(partition.getId(), partitionMetadata.build());
+            }
+            resp.addMetadata(streamMetadata);
+        }
+        return resp.build();
+    }
+
+}
@@ -0,0 +1,42 @@
+package io.liftbridge;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * {@code OffsetStore} keeps track of how far each stream partition has been consumed so a subscription can resume
+ * where it left off. Set it with {@link SubscriptionOptions#setOffsetStore} to have subscriptions start after the
+ * stored offset and commit the offset of every message once it has been handled.
+ * <p>
+ * Implementations must be thread-safe and may buffer commits, so a commit is only guaranteed to be durable after
+ * {@link #flush} returns.
+ */
+public interface OffsetStore extends Closeable {
+
+    /**
+     * Returns the last committed offset of the given stream partition.
+     *
+     * @param stream    stream name
+     * @param partition stream partition
+     * @return committed offset, or -1 if none was committed
+     */
+    long getOffset(String stream, int partition);
+
+    /**
+     * Records that the message at the given offset and every message before it have been handled. Committing an
+     * offset lower than the committed one has no effect.
+     *
+     * @param stream    stream name
+     * @param partition stream partition
+     * @param offset    offset of the last handled message
+     */
+    void commit(String stream, int partition, long offset);
+
+    /**
+     * Persists every commit made so far, blocking until they are durable.
+     *
+     * @throws IOException if the commits could not be persisted
+     */
+    void flush() throws IOException;
+
+}
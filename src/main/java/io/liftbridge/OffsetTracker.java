@@ -0,0 +1,61 @@
+package io.liftbridge;
+
+import java.util.ArrayDeque;
+
+/**
+ * Tracks the messages of a partition which are handled out of order and computes the highest offset up to which
+ * every received message has completed. Offsets are tracked in the order they were received, so gaps left by
+ * compaction don't hold up progress.
+ */
+class OffsetTracker {
+
+    private final ArrayDeque<Entry> inFlight = new ArrayDeque<>();
+    private long completedOffset = -1;
+
+    /**
+     * Starts tracking a received message. Must be called in offset order.
+     *
+     * @param offset message offset
+     * @return {@link Entry} to pass to {@link #complete} once the message is handled
+     */
+    synchronized Entry track(long offset) {
+        Entry entry = new Entry(offset);
+        inFlight.addLast(entry);
+        return entry;
+    }
+
+    /**
+     * Marks a message as handled and advances the completed offset past every message handled so far.
+     *
+     * @param entry entry returned by {@link #track}
+     * @return true if the completed offset advanced
+     */
+    synchronized boolean complete(Entry entry) {
+        entry.done = true;
+        boolean advanced = false;
+        while (!inFlight.isEmpty() && inFlight.peekFirst().done) {
+            completedOffset = inFlight.pollFirst().offset;
+            advanced = true;
+        }
+        return advanced;
+    }
+
+    /**
+     * Returns the highest offset such that it and every message received before it have been handled.
+     *
+     * @return completed offset, or -1 if there is none yet
+     */
+    synchronized long getCompletedOffset() {
+        return completedOffset;
+    }
+
+    static class Entry {
+        private final long offset;
+        private boolean done;
+
+        private Entry(long offset) {
+            this.offset = offset;
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+package io.liftbridge;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * {@code ParallelOptions} are used to configure how a subscription created with {@link Client#subscribeParallel}
+ * runs its handler on a worker pool.
+ */
+public class ParallelOptions {
+
+    private static final int DEFAULT_MAX_IN_FLIGHT = 1000;
+    private static final int DEFAULT_KEY_LANES = 256;
+
+    private Executor executor = ForkJoinPool.commonPool();
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private int keyLanes = DEFAULT_KEY_LANES;
+
+    public ParallelOptions() {
+    }
+
+    /**
+     * Returns the {@link Executor} handlers run on.
+     *
+     * @return worker pool
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the {@link Executor} handlers run on. Defaults to the common fork-join pool.
+     *
+     * @param executor worker pool
+     * @return {@code this} to allow for chaining
+     */
+    public ParallelOptions setExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Returns the maximum number of messages received but not yet handled.
+     *
+     * @return maximum messages in flight
+     */
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * Sets the maximum number of messages received but not yet handled, across all partitions. Once reached, no more
+     * messages are requested from the brokers until a handler completes, though each partition may still deliver the
+     * one message it had already requested. Defaults to 1000.
+     *
+     * @param maxInFlight maximum messages in flight
+     * @return {@code this} to allow for chaining
+     */
+    public ParallelOptions setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.maxInFlight = maxInFlight;
+        return this;
+    }
+
+    /**
+     * Returns the number of lanes messages are spread over by key.
+     *
+     * @return number of key lanes
+     */
+    public int getKeyLanes() {
+        return keyLanes;
+    }
+
+    /**
+     * Sets the number of lanes messages are spread over by key. Messages in the same lane are handled one at a time,
+     * so this bounds the parallelism. Keys which hash to the same lane are kept in order with each other as well.
+     * Defaults to 256.
+     *
+     * @param keyLanes number of key lanes
+     * @return {@code this} to allow for chaining
+     */
+    public ParallelOptions setKeyLanes(int keyLanes) {
+        if (keyLanes < 1) {
+            throw new IllegalArgumentException("keyLanes must be positive");
+        }
+        this.keyLanes = keyLanes;
+        return this;
+    }
+
+}
@@ -0,0 +1,55 @@
+package io.liftbridge;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@code ParallelSubscription} to every partition of a stream whose messages are handled on a worker pool, as
+ * returned by {@link Client#subscribeParallel}. Because messages complete out of order, it tracks for each partition
+ * the highest offset up to which every message has been handled. Resuming after that offset with
+ * {@link SubscriptionOptions#startAtOffset} neither skips nor repeats more than the messages in flight.
+ */
+public class ParallelSubscription {
+
+    private final Subscription sub;
+    private final KeyOrderedDispatcher dispatcher;
+
+    ParallelSubscription(Subscription sub, KeyOrderedDispatcher dispatcher) {
+        this.sub = sub;
+        this.dispatcher = dispatcher;
+    }
+
+    /**
+     * Returns the highest offset of the given partition such that it and every message received before it on the
+     * partition have been handled.
+     *
+     * @param partition stream partition
+     * @return completed offset, or -1 if no message of the partition has completed yet
+     */
+    public long getCompletedOffset(int partition) {
+        return dispatcher.getCompletedOffset(partition);
+    }
+
+    /**
+     * Returns the completed offset, as described in {@link #getCompletedOffset}, of every partition which received
+     * messages.
+     *
+     * @return completed offsets by partition
+     */
+    public Map<Integer, Long> getCompletedOffsets() {
+        Map<Integer, Long> offsets = new HashMap<>();
+        for (Map.Entry<Integer, OffsetTracker> entry : dispatcher.getTrackers().entrySet()) {
+            offsets.put(entry.getKey(), entry.getValue().getCompletedOffset());
+        }
+        return Collections.unmodifiableMap(offsets);
+    }
+
+    /**
+     * Closes the subscriptions to all partitions. Messages already handed to the worker pool are still handled.
+     */
+    public void unsubscribe() {
+        sub.unsubscribe();
+    }
+
+}
@@ -16,4 +16,30 @@ public interface Partitioner {
      */
     int partition(String stream, byte[] key, byte[] value, MessageOptions opts);
 
+    /**
+     * Computes the partition number for a given message using the client's current cluster metadata. Partitioners
+     * which depend on the number of partitions in a stream should override this. By default, the metadata is ignored.
+     *
+     * @param stream   name of the stream being published to
+     * @param key      message key
+     * @param value    message value
+     * @param metadata cluster {@code Metadata}, or null if not known
+     * @param opts     {@code MessageOptions}
+     * @return stream partition number
+     */
+    default int partition(String stream, byte[] key, byte[] value, Metadata metadata, MessageOptions opts) {
+        return partition(stream, key, value, opts);
+    }
+
+    /**
+     * Called by publishers which group messages per stream partition themselves, once the group for a partition has
+     * been sent. Partitioners which try to keep such groups full can use this to move on to another partition. By
+     * default, this does nothing.
+     *
+     * @param stream    name of the stream the batch was published to
+     * @param partition partition the batch was published to
+     */
+    default void onNewBatch(String stream, int partition) {
+    }
+
 }
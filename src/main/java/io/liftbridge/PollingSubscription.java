@@ -0,0 +1,260 @@
+package io.liftbridge;
+
+import io.grpc.stub.ClientCallStreamObserver;
+import io.liftbridge.exceptions.LiftbridgeException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@code PollingSubscription} to a stream partition which is consumed by calling {@link #poll}, as returned by
+ * {@link Client#subscribePolling}. This leaves threading and batching entirely to the caller.
+ * <p>
+ * Messages are added to a bounded, preallocated ring buffer by the subscription's gRPC thread without locking and
+ * {@link #poll} takes everything buffered at once. Messages are only requested from the broker while there is room in
+ * the buffer, so a consumer which stops polling makes the broker stop sending rather than filling up memory. The
+ * subscription resubscribes after losing its broker as described in
+ * {@link Client#subscribe(String, SubscriptionOptions, MessageHandler)}.
+ * <p>
+ * With an {@link OffsetStore} set in the {@link SubscriptionOptions}, the messages returned by a poll are committed
+ * by the next poll, since the caller is done with them by then, or by {@link #commit}.
+ * <p>
+ * A {@code PollingSubscription} must only be polled by one thread at a time.
+ */
+public class PollingSubscription {
+
+    private final SpscRingBuffer<Message> buffer;
+    private final int refillThreshold;
+    private final RingFlowController flow = new RingFlowController();
+    private final Handler handler = new Handler();
+    private final String stream;
+    private final OffsetStore store;
+    // Last message returned by poll and not committed yet, only accessed by the polling thread.
+    private Message uncommitted;
+    private volatile Subscription sub;
+    private volatile Throwable error;
+    private volatile Thread waiter;
+
+    PollingSubscription(int capacity, String stream, OffsetStore store) {
+        this.stream = stream;
+        this.store = store;
+        this.buffer = new SpscRingBuffer<>(capacity);
+        // Request messages in chunks rather than one by one as the consumer frees up room.
+        this.refillThreshold = Math.max(1, buffer.capacity() / 4);
+    }
+
+    MessageHandler handler() {
+        return handler;
+    }
+
+    FlowController flowController() {
+        return flow;
+    }
+
+    void setSubscription(Subscription sub) {
+        this.sub = sub;
+    }
+
+    /**
+     * Returns the number of messages the buffer holds, which is the configured capacity rounded up to a power of
+     * two.
+     *
+     * @return buffer capacity
+     */
+    public int getCapacity() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Returns all buffered messages, waiting up to the given time for messages to arrive if there are none. Messages
+     * are returned in offset order.
+     * <p>
+     * Once the subscription has failed, the messages received before the failure are returned first and the error is
+     * thrown by the following call.
+     *
+     * @param timeout maximum time to wait for messages
+     * @param unit    time unit of timeout
+     * @return buffered messages, empty if none arrived in time or the subscription was closed
+     * @throws InterruptedException if interrupted while waiting
+     * @throws LiftbridgeException  if the subscription failed, such as when the stream was deleted
+     */
+    public List<Message> poll(long timeout, TimeUnit unit) throws InterruptedException, LiftbridgeException {
+        commit();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        List<Message> msgs = new ArrayList<>(Math.min(buffer.size(), buffer.capacity()));
+        while (true) {
+            if (drain(msgs) > 0) {
+                return msgs;
+            }
+            Throwable err = error;
+            if (err != null) {
+                // Messages received right before the error come first.
+                if (drain(msgs) > 0) {
+                    return msgs;
+                }
+                if (err instanceof LiftbridgeException) {
+                    throw (LiftbridgeException) err;
+                }
+                if (err instanceof RuntimeException) {
+                    throw (RuntimeException) err;
+                }
+                if (err instanceof Error) {
+                    throw (Error) err;
+                }
+                throw new IllegalStateException("subscription failed", err);
+            }
+            Subscription sub = this.sub;
+            if (sub != null && sub.isUnsubscribed()) {
+                return msgs;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return msgs;
+            }
+            waiter = Thread.currentThread();
+            if (buffer.isEmpty() && error == null) {
+                LockSupport.parkNanos(this, remaining);
+            }
+            waiter = null;
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * Closes the subscription and wakes up a blocked {@link #poll}. Messages already buffered are still returned by
+     * {@code poll}.
+     */
+    public void unsubscribe() {
+        Subscription sub = this.sub;
+        if (sub != null) {
+            sub.unsubscribe();
+        }
+        wakeUp();
+    }
+
+    /**
+     * Commits the messages returned by the last poll to the offset store set in the {@link SubscriptionOptions}, if
+     * any. Polling commits them as well, so this is only needed to commit before closing the subscription or while
+     * not polling for a while.
+     */
+    public void commit() {
+        Message msg = uncommitted;
+        if (msg != null && store != null) {
+            store.commit(stream, msg.getPartition(), msg.getOffset());
+        }
+        uncommitted = null;
+    }
+
+    private int drain(List<Message> msgs) {
+        int n = buffer.drainTo(msgs, Integer.MAX_VALUE);
+        if (n > 0) {
+            uncommitted = msgs.get(msgs.size() - 1);
+            flow.replenish();
+        }
+        return n;
+    }
+
+    private void wakeUp() {
+        Thread waiter = this.waiter;
+        if (waiter != null) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    /**
+     * Producer side, called on the subscription's gRPC thread.
+     */
+    private class Handler implements MessageHandler {
+
+        @Override
+        public void onMessage(Message msg) {
+            if (!buffer.offer(msg)) {
+                // Cannot happen as long as the broker respects flow control.
+                onError(new IllegalStateException("polling buffer overflow"));
+                return;
+            }
+            flow.received.lazySet(flow.received.get() + 1);
+            wakeUp();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            if (error == null) {
+                error = t;
+            }
+            Subscription sub = PollingSubscription.this.sub;
+            if (sub != null) {
+                sub.unsubscribe();
+            }
+            wakeUp();
+        }
+    }
+
+    /**
+     * Requests messages from the broker while the buffered and requested messages fit in the buffer. Messages are
+     * counted as they are buffered, so the gRPC thread never takes a lock.
+     */
+    private class RingFlowController implements FlowController {
+        private ClientCallStreamObserver<?> call;
+        private boolean ready;
+        // Messages requested from and buffered off the current call.
+        private long requested;
+        private final AtomicLong received = new AtomicLong();
+
+        @Override
+        public synchronized void start(ClientCallStreamObserver<?> call) {
+            call.disableAutoInboundFlowControl();
+            this.call = call;
+            this.ready = false;
+        }
+
+        @Override
+        public void handshake() {
+            synchronized (this) {
+                // Messages requested from a previous call are lost with it.
+                requested = 0;
+                received.set(0);
+                ready = true;
+            }
+            replenish();
+        }
+
+        @Override
+        public void received(int bytes) {
+            // Counted once the message is buffered.
+        }
+
+        @Override
+        public void consumed(int bytes) {
+            // Room is freed when the buffer is drained.
+        }
+
+        void replenish() {
+            ClientCallStreamObserver<?> call;
+            int n;
+            synchronized (this) {
+                if (!ready) {
+                    return;
+                }
+                // Read the received count before the buffer size, which may count a message twice but never misses
+                // one, since the producer buffers a message before counting it.
+                long outstanding = requested - received.get();
+                n = (int) (buffer.capacity() - outstanding - buffer.size());
+                if (n < refillThreshold) {
+                    return;
+                }
+                requested += n;
+                call = this.call;
+            }
+            if (n > 0) {
+                call.request(n);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+package io.liftbridge;
+
+import io.grpc.stub.ClientCallStreamObserver;
+
+/**
+ * {@link FlowController} for the prefetch limits of {@link SubscriptionOptions}. Messages are only requested from the
+ * broker while fewer than the prefetch count are requested or awaiting their handler, and while the messages awaiting
+ * their handler take up less than the prefetch bytes. This bounds the memory a subscription uses regardless of how far
+ * behind its handler falls.
+ */
+class PrefetchFlowController implements FlowController {
+
+    private final int prefetchCount;
+    private final long prefetchBytes;
+    private ClientCallStreamObserver<?> call;
+    // gRPC requests one message when the call starts, which covers the subscription handshake.
+    private int requested = 1;
+    private int buffered;
+    private long bufferedBytes;
+
+    PrefetchFlowController(int prefetchCount, long prefetchBytes) {
+        this.prefetchCount = prefetchCount;
+        this.prefetchBytes = prefetchBytes;
+    }
+
+    @Override
+    public synchronized void start(ClientCallStreamObserver<?> call) {
+        call.disableAutoInboundFlowControl();
+        this.call = call;
+    }
+
+    @Override
+    public void handshake() {
+        int n;
+        synchronized (this) {
+            requested--;
+            n = replenish();
+        }
+        request(n);
+    }
+
+    @Override
+    public void received(int bytes) {
+        int n;
+        synchronized (this) {
+            requested--;
+            buffered++;
+            bufferedBytes += bytes;
+            n = replenish();
+        }
+        request(n);
+    }
+
+    @Override
+    public void consumed(int bytes) {
+        int n;
+        synchronized (this) {
+            buffered--;
+            bufferedBytes -= bytes;
+            n = replenish();
+        }
+        request(n);
+    }
+
+    /**
+     * Returns the number of messages to request to fill the window and counts them as requested.
+     */
+    private int replenish() {
+        // Without a count limit, only ask for one message at a time since its size is unknown up front.
+        int maxRequested = prefetchCount > 0 ? prefetchCount : 1;
+        int n = 0;
+        while (requested < maxRequested
+                && (prefetchCount <= 0 || requested + buffered < prefetchCount)
+                && (prefetchBytes <= 0 || bufferedBytes < prefetchBytes)) {
+            requested++;
+            n++;
+        }
+        return n;
+    }
+
+    private void request(int n) {
+        ClientCallStreamObserver<?> call;
+        synchronized (this) {
+            call = this.call;
+        }
+        if (n > 0 && call != null) {
+            call.request(n);
+        }
+    }
+
+}
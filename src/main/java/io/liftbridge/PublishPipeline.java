@@ -0,0 +1,129 @@
+package io.liftbridge;
+
+import com.google.protobuf.ByteString;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code PublishPipeline} publishes messages while keeping up to a fixed number of requests in flight. Once the window
+ * is full, {@link #publish} blocks until an outstanding request completes, which bounds the memory used by a fast
+ * producer and lets a single thread keep the links busy without hundreds of publishing threads.
+ * <p>
+ * Each request goes to its partition leader over the {@link Client}'s shared connection to that broker, like
+ * {@link Client#publishAsync} does, and is retried on the new leader if the leader is unavailable.
+ * <p>
+ * Messages without a correlation id are assigned one that is unique within the pipeline. The assigned id is visible
+ * through {@link Ack#getCorrelationId()}.
+ */
+public class PublishPipeline {
+
+    private final Client client;
+    private final int maxInFlight;
+    private final Semaphore window;
+    private final ConcurrentHashMap<String, CompletableFuture<Ack>> pending = new ConcurrentHashMap<>();
+    private final String idPrefix = UUID.randomUUID().toString() + "-";
+    private final AtomicLong nextId = new AtomicLong();
+    private boolean closed;
+
+    /**
+     * Creates a {@code PublishPipeline} publishing through the given {@link Client}.
+     *
+     * @param client      {@code Client} whose cluster to publish to
+     * @param maxInFlight maximum number of requests awaiting a response
+     */
+    public PublishPipeline(Client client, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.client = client;
+        this.maxInFlight = maxInFlight;
+        this.window = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * Publishes a new message to a Liftbridge stream. Partitioning works the same as in {@link Client#publish}. Blocks
+     * while the in-flight window is full.
+     * <p>
+     * The returned future is completed with the {@code Ack} carrying the message's correlation id, or with null if no
+     * AckPolicy and deadline are configured. If the ack is not received in time, the future fails with a
+     * {@link io.liftbridge.exceptions.DeadlineExceededException}.
+     *
+     * @param stream  name of stream to publish to
+     * @param payload message value
+     * @param opts    {@code MessageOptions} to configure message
+     * @return future {@code Ack}
+     * @throws InterruptedException     if interrupted while waiting for room in the window
+     * @throws IllegalArgumentException if a message with the same correlation id is already in flight
+     * @throws IllegalStateException    if the pipeline has been closed
+     */
+    public CompletableFuture<Ack> publish(String stream, byte[] payload, MessageOptions opts)
+            throws InterruptedException {
+        int partition = client.partition(stream, payload, opts);
+        String correlationId = opts.getCorrelationId() != null
+                ? opts.getCorrelationId() : idPrefix + nextId.getAndIncrement();
+
+        window.acquire();
+        CompletableFuture<Ack> future = new CompletableFuture<>();
+        if (pending.putIfAbsent(correlationId, future) != null) {
+            window.release();
+            throw new IllegalArgumentException(String.format("correlation id already in flight: %s", correlationId));
+        }
+        synchronized (this) {
+            if (closed) {
+                pending.remove(correlationId);
+                window.release();
+                throw new IllegalStateException("pipeline is closed");
+            }
+        }
+        ByteString value = payload == null ? null : ByteString.copyFrom(payload);
+        client.publishAsync(APIClient.publishRequest(stream, partition, value, opts, correlationId, false), opts)
+                .whenComplete((ack, t) -> complete(correlationId, ack, t));
+        return future;
+    }
+
+    /**
+     * Returns the number of requests currently awaiting a response.
+     *
+     * @return in-flight request count
+     */
+    public int getInFlight() {
+        return maxInFlight - window.availablePermits();
+    }
+
+    /**
+     * Waits for all in-flight requests to complete. Messages published after this call are rejected.
+     *
+     * @throws InterruptedException if interrupted while waiting for in-flight requests
+     */
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        window.acquire(maxInFlight);
+        window.release(maxInFlight);
+    }
+
+    /**
+     * Completes the caller of the request with the given correlation id and frees its slot in the window.
+     */
+    private void complete(String correlationId, Ack ack, Throwable t) {
+        CompletableFuture<Ack> future = pending.remove(correlationId);
+        if (future == null) {
+            return;
+        }
+        window.release();
+        if (t != null) {
+            future.completeExceptionally(t);
+        } else {
+            future.complete(ack);
+        }
+    }
+
+}
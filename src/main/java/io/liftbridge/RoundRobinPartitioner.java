@@ -0,0 +1,62 @@
+package io.liftbridge;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link Partitioner} which distributes messages across the partitions of a stream in turn, regardless of the message
+ * key. Each stream has its own counter, striped like a {@link java.util.concurrent.atomic.LongAdder} so that
+ * publishing threads rarely share it: each thread takes the partitions in turn on its own instead of contending with
+ * the others on a single atomic increment, and the messages of all threads still spread evenly. The partition count
+ * is read from the client's cached metadata. If the stream is not known, messages are mapped to the base (zeroth)
+ * partition.
+ */
+public class RoundRobinPartitioner implements Partitioner {
+
+    private final ConcurrentHashMap<String, StripedCounter> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Computes the partition number for a given message. Without metadata the partition count is unknown, so this
+     * always returns the base partition.
+     *
+     * @param stream name of the stream being published to
+     * @param key    message key
+     * @param value  message value
+     * @param opts   {@code MessageOptions}
+     * @return stream partition number
+     */
+    public int partition(String stream, byte[] key, byte[] value, MessageOptions opts) {
+        return partition(stream, key, value, null, opts);
+    }
+
+    /**
+     * Computes the partition number for a given message by taking the next partition of the stream in turn.
+     *
+     * @param stream   name of the stream being published to
+     * @param key      message key
+     * @param value    message value
+     * @param metadata cluster {@code Metadata}, or null if not known
+     * @param opts     {@code MessageOptions}
+     * @return stream partition number
+     */
+    @Override
+    public int partition(String stream, byte[] key, byte[] value, Metadata metadata, MessageOptions opts) {
+        if (metadata == null) {
+            return 0;
+        }
+        int partitions = metadata.getPartitionCountForStream(stream);
+        if (partitions == 0) {
+            return 0;
+        }
+        return (int) (counter(stream).getAndIncrement() % partitions);
+    }
+
+    private StripedCounter counter(String stream) {
+        // Plain get first: computeIfAbsent locks the bin even when the key is present.
+        StripedCounter counter = counters.get(stream);
+        if (counter == null) {
+            counter = counters.computeIfAbsent(stream, s -> new StripedCounter(() -> 0));
+        }
+        return counter;
+    }
+
+}
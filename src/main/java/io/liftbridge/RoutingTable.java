@@ -0,0 +1,153 @@
+package io.liftbridge;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Immutable broker addresses for one version of the {@link Metadata}, laid out for routing publishes and
+ * subscriptions. Each stream holds its partitions' leader and ISR addresses in arrays indexed by partition ID, so a
+ * lookup is a map lookup by stream name followed by array accesses, without locking or allocating.
+ */
+class RoutingTable {
+
+    private static final String[] NO_ADDRS = new String[0];
+
+    private final Metadata metadata;
+    private final Map<String, StreamRoutes> streams;
+    private final Set<String> addrs;
+
+    private RoutingTable(Metadata metadata, Map<String, StreamRoutes> streams, Set<String> addrs) {
+        this.metadata = metadata;
+        this.streams = streams;
+        this.addrs = addrs;
+    }
+
+    /**
+     * Builds the routing table for the given metadata.
+     *
+     * @param metadata       {@link Metadata} to route by
+     * @param bootstrapAddrs addresses the client was configured with, which are always known
+     * @return {@code RoutingTable} for the metadata
+     */
+    static RoutingTable build(Metadata metadata, Set<String> bootstrapAddrs) {
+        return build(metadata, bootstrapAddrs, null);
+    }
+
+    /**
+     * Builds the routing table for the given metadata, reusing the routes of the previous table for streams whose
+     * {@link StreamInfo} is unchanged.
+     *
+     * @param metadata       {@link Metadata} to route by
+     * @param bootstrapAddrs addresses the client was configured with, which are always known
+     * @param previous       routing table of the previous metadata, or null
+     * @return {@code RoutingTable} for the metadata
+     */
+    static RoutingTable build(Metadata metadata, Set<String> bootstrapAddrs, RoutingTable previous) {
+        Map<BrokerInfo, String> brokerAddrs = new HashMap<>();
+        for (BrokerInfo broker : metadata.getBrokers()) {
+            // Share one address string between all partitions of a broker.
+            brokerAddrs.put(broker, broker.getAddr());
+        }
+        Map<String, StreamRoutes> streams = new HashMap<>();
+        for (StreamInfo stream : metadata.getStreams()) {
+            StreamRoutes routes = previous == null ? null : previous.streams.get(stream.getName());
+            if (routes == null || routes.stream != stream) {
+                routes = StreamRoutes.build(stream, brokerAddrs);
+            }
+            streams.put(stream.getName(), routes);
+        }
+        Set<String> addrs = new HashSet<>(bootstrapAddrs);
+        addrs.addAll(metadata.getAddrs());
+        return new RoutingTable(metadata, streams, Collections.unmodifiableSet(addrs));
+    }
+
+    Metadata getMetadata() {
+        return metadata;
+    }
+
+    /**
+     * Returns the bootstrap addresses and the addresses of all brokers in the metadata.
+     *
+     * @return unmodifiable set of broker addresses
+     */
+    Set<String> getAddrs() {
+        return addrs;
+    }
+
+    /**
+     * Returns the address of the broker to use for the given stream partition.
+     *
+     * @param stream         stream name
+     * @param partition      partition ID
+     * @param readIsrReplica whether to pick a random ISR replica rather than the leader
+     * @return broker address, or null if the partition or its leader is unknown
+     */
+    String getAddr(String stream, int partition, boolean readIsrReplica) {
+        StreamRoutes routes = streams.get(stream);
+        if (routes == null || partition < 0 || partition >= routes.leaders.length) {
+            return null;
+        }
+        if (readIsrReplica) {
+            String[] isr = routes.isrs[partition];
+            if (isr.length > 0) {
+                return isr[ThreadLocalRandom.current().nextInt(isr.length)];
+            }
+        }
+        return routes.leaders[partition];
+    }
+
+    /**
+     * Leader and ISR addresses of a stream's partitions, indexed by partition ID. Missing partitions have a null
+     * leader and an empty ISR.
+     */
+    private static class StreamRoutes {
+        private final StreamInfo stream;
+        private final String[] leaders;
+        private final String[][] isrs;
+
+        private StreamRoutes(StreamInfo stream, String[] leaders, String[][] isrs) {
+            this.stream = stream;
+            this.leaders = leaders;
+            this.isrs = isrs;
+        }
+
+        static StreamRoutes build(StreamInfo stream, Map<BrokerInfo, String> brokerAddrs) {
+            int size = 0;
+            for (int id : stream.getPartitions().keySet()) {
+                size = Math.max(size, id + 1);
+            }
+            String[] leaders = new String[size];
+            String[][] isrs = new String[size][];
+            for (int i = 0; i < size; i++) {
+                PartitionInfo partition = stream.getPartition(i);
+                if (partition == null) {
+                    isrs[i] = NO_ADDRS;
+                    continue;
+                }
+                if (partition.getLeader() != null) {
+                    leaders[i] = addr(partition.getLeader(), brokerAddrs);
+                }
+                String[] isr = new String[partition.getISR().size()];
+                int n = 0;
+                for (BrokerInfo broker : partition.getISR()) {
+                    if (broker != null) {
+                        isr[n++] = addr(broker, brokerAddrs);
+                    }
+                }
+                isrs[i] = n == isr.length ? isr : Arrays.copyOf(isr, n);
+            }
+            return new StreamRoutes(stream, leaders, isrs);
+        }
+
+        private static String addr(BrokerInfo broker, Map<BrokerInfo, String> brokerAddrs) {
+            String addr = brokerAddrs.get(broker);
+            return addr != null ? addr : broker.getAddr();
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+package io.liftbridge;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link Executor} which runs tasks one at a time, in submission order, on an underlying executor. Tasks never run
+ * concurrently even if the underlying executor has many threads, which keeps the messages of a subscription in order
+ * while handlers of different subscriptions run in parallel.
+ */
+class SerializedExecutor implements Executor {
+
+    private final Executor delegate;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    SerializedExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.add(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            delegate.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            scheduled.set(false);
+            throw e;
+        }
+    }
+
+    private void drain() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                // Keep running the remaining tasks.
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+            }
+        }
+        scheduled.set(false);
+        // A task may have been added after the queue was found empty but before scheduled was cleared.
+        if (!tasks.isEmpty()) {
+            schedule();
+        }
+    }
+
+}
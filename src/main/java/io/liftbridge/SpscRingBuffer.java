@@ -0,0 +1,99 @@
+package io.liftbridge;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded single-producer/single-consumer queue backed by a preallocated array. One thread may {@link #offer} while
+ * another {@link #drainTo drains}, without locks: each side only writes its own index. The consumer publishes its
+ * index with an ordered write. The producer publishes its index with a volatile write, so a producer which checks for
+ * a parked consumer right after offering sees one which checked for elements before parking.
+ *
+ * @param <E> element type
+ */
+class SpscRingBuffer<E> {
+
+    private final Object[] buffer;
+    private final int mask;
+    // Index of the next element to take, only written by the consumer.
+    private final AtomicLong head = new AtomicLong();
+    // Index of the next free slot, only written by the producer.
+    private final AtomicLong tail = new AtomicLong();
+    // The producer's last read of head, which saves reading it on every offer.
+    private long headCache;
+
+    /**
+     * Creates a ring buffer holding at least the given number of elements.
+     *
+     * @param capacity minimum capacity, rounded up to a power of two
+     */
+    SpscRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity out of range");
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.buffer = new Object[size];
+        this.mask = size - 1;
+    }
+
+    int capacity() {
+        return buffer.length;
+    }
+
+    /**
+     * Adds an element if there is room. Must only be called by the producer.
+     *
+     * @param e element to add
+     * @return false if the buffer is full
+     */
+    boolean offer(E e) {
+        long t = tail.get();
+        if (t - headCache >= buffer.length) {
+            headCache = head.get();
+            if (t - headCache >= buffer.length) {
+                return false;
+            }
+        }
+        buffer[(int) (t & mask)] = e;
+        tail.set(t + 1);
+        return true;
+    }
+
+    /**
+     * Moves up to the given number of elements into the given collection, oldest first. Must only be called by the
+     * consumer.
+     *
+     * @param c           collection to add the elements to
+     * @param maxElements maximum number of elements to move
+     * @return number of elements moved
+     */
+    @SuppressWarnings("unchecked")
+    int drainTo(Collection<? super E> c, int maxElements) {
+        long h = head.get();
+        int n = (int) Math.min(tail.get() - h, maxElements);
+        for (int i = 0; i < n; i++) {
+            int index = (int) ((h + i) & mask);
+            c.add((E) buffer[index]);
+            buffer[index] = null;
+        }
+        if (n > 0) {
+            head.lazySet(h + n);
+        }
+        return n;
+    }
+
+    /**
+     * Returns the number of elements in the buffer. This is exact when called by the consumer while the producer is
+     * idle, and otherwise an estimate.
+     */
+    int size() {
+        // Reading head first never yields a negative size, since tail only moves forward.
+        long h = head.get();
+        return (int) (tail.get() - h);
+    }
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+}
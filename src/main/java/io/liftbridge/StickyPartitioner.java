@@ -0,0 +1,145 @@
+package io.liftbridge;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * {@link Partitioner} which keeps messages without a key on one partition of a stream until a batch worth of messages
+ * has been published to it, and then moves on to the next partition. This keeps runs of consecutive messages on one
+ * partition leader while still spreading load over time. A publisher grouping messages per partition itself can call
+ * {@link #onNewBatch} to make the partitioner move on as soon as the group for its current partition is sent.
+ * <p>
+ * The count of keyless messages is striped like a {@link java.util.concurrent.atomic.LongAdder}, so publishing threads
+ * rarely share a counter and each sticks to a partition of its own, moving on after a batch worth of its own messages.
+ * Each counter starts at a random partition so that many publishers do not all fill the same one.
+ * <p>
+ * Messages with a key are partitioned like {@link KeyHashPartitioner} does, so a key always maps to the same
+ * partition. Like the other partitioners, this never locks and maps messages to the base partition if the stream is
+ * not known.
+ */
+public class StickyPartitioner implements Partitioner {
+
+    private static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final int batchSize;
+    private final KeyHashPartitioner keyPartitioner = new KeyHashPartitioner();
+    private final ConcurrentHashMap<String, StreamState> states = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a {@code StickyPartitioner} which rotates partitions every 500 keyless messages.
+     */
+    public StickyPartitioner() {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a {@code StickyPartitioner} which rotates partitions every {@code batchSize} keyless messages.
+     *
+     * @param batchSize number of keyless messages to publish to a partition before moving on
+     */
+    public StickyPartitioner(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Computes the partition number for a given message. Without metadata the partition count is unknown, so this
+     * always returns the base partition.
+     *
+     * @param stream name of the stream being published to
+     * @param key    message key
+     * @param value  message value
+     * @param opts   {@code MessageOptions}
+     * @return stream partition number
+     */
+    public int partition(String stream, byte[] key, byte[] value, MessageOptions opts) {
+        return partition(stream, key, value, null, opts);
+    }
+
+    /**
+     * Computes the partition number for a given message. Keyed messages are hashed, keyless messages go to the
+     * stream's current sticky partition.
+     *
+     * @param stream   name of the stream being published to
+     * @param key      message key
+     * @param value    message value
+     * @param metadata cluster {@code Metadata}, or null if not known
+     * @param opts     {@code MessageOptions}
+     * @return stream partition number
+     */
+    @Override
+    public int partition(String stream, byte[] key, byte[] value, Metadata metadata, MessageOptions opts) {
+        if (key != null) {
+            return keyPartitioner.partition(stream, key, value, metadata, opts);
+        }
+        if (metadata == null) {
+            return 0;
+        }
+        int partitions = metadata.getPartitionCountForStream(stream);
+        if (partitions == 0) {
+            return 0;
+        }
+        StreamState state = state(stream, partitions);
+        if (state.partitions != partitions) {
+            state.partitions = partitions;
+        }
+        return partitionFor(state.count.getAndIncrement(), partitions);
+    }
+
+    /**
+     * Moves every thread publishing to the stream on to its next partition if the closed batch belongs to its current
+     * sticky partition.
+     *
+     * @param stream    name of the stream the batch was published to
+     * @param partition partition the batch was published to
+     */
+    @Override
+    public void onNewBatch(String stream, int partition) {
+        StreamState state = states.get(stream);
+        if (state == null) {
+            return;
+        }
+        int partitions = state.partitions;
+        if (partitions <= 0) {
+            return;
+        }
+        StripedCounter counter = state.count;
+        for (int cell = 0; cell < counter.getCells(); cell++) {
+            long count = counter.get(cell);
+            while (partitionFor(count, partitions) == partition) {
+                if (counter.compareAndSet(cell, count, (count / batchSize + 1) * batchSize)) {
+                    break;
+                }
+                count = counter.get(cell);
+            }
+        }
+    }
+
+    private int partitionFor(long count, int partitions) {
+        return (int) ((count / batchSize) % partitions);
+    }
+
+    private StreamState state(String stream, int partitions) {
+        // Plain get first: computeIfAbsent locks the bin even when the key is present.
+        StreamState state = states.get(stream);
+        if (state == null) {
+            // The partition count is set before the state is published, so onNewBatch never sees it unset.
+            state = states.computeIfAbsent(stream, s -> new StreamState(new StripedCounter(
+                    () -> ThreadLocalRandom.current().nextInt(1 << 16) * (long) batchSize), partitions));
+        }
+        return state;
+    }
+
+    private static class StreamState {
+        private final StripedCounter count;
+        private volatile int partitions;
+
+        StreamState(StripedCounter count, int partitions) {
+            this.count = count;
+            this.partitions = partitions;
+        }
+    }
+
+}
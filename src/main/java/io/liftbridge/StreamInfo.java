@@ -15,6 +15,14 @@ public class StreamInfo {
         this.partitions = partitions;
     }
 
+    public String getName() {
+        return name;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
     public PartitionInfo getPartition(int id) {
         return partitions.get(id);
     }
@@ -23,4 +31,8 @@ public class StreamInfo {
         return Collections.unmodifiableMap(partitions);
     }
 
+    int getPartitionCount() {
+        return partitions.size();
+    }
+
 }
@@ -0,0 +1,81 @@
+package io.liftbridge;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Counter striped over several cells, as {@link java.util.concurrent.atomic.LongAdder} is, so that threads
+ * incrementing it concurrently rarely share a cell. A thread always uses the same cell, picked from its ID, so the
+ * values it takes from {@link #getAndIncrement} are consecutive unless another thread shares its cell. Cells are
+ * spaced a cache line apart so that threads on different cells don't contend either.
+ */
+class StripedCounter {
+
+    // Smallest power of two covering the processors, since no more threads than that increment at once.
+    private static final int DEFAULT_CELLS = Integer.highestOneBit(
+            Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1));
+    // Longs per cache line.
+    private static final int STRIDE = 8;
+
+    private final AtomicLongArray cells;
+    private final int mask;
+
+    /**
+     * Creates a counter with as many cells as there are processors, rounded up to a power of two.
+     *
+     * @param start supplies the initial value of each cell
+     */
+    StripedCounter(LongSupplier start) {
+        this(DEFAULT_CELLS, start);
+    }
+
+    /**
+     * @param cells number of cells, must be a power of two
+     * @param start supplies the initial value of each cell
+     */
+    StripedCounter(int cells, LongSupplier start) {
+        if (cells < 1 || Integer.bitCount(cells) != 1) {
+            throw new IllegalArgumentException("cells must be a power of two");
+        }
+        this.cells = new AtomicLongArray(cells * STRIDE);
+        this.mask = cells - 1;
+        for (int i = 0; i < cells; i++) {
+            this.cells.set(i * STRIDE, start.getAsLong());
+        }
+    }
+
+    /**
+     * Increments the current thread's cell.
+     *
+     * @return the cell's previous value
+     */
+    long getAndIncrement() {
+        return cells.getAndIncrement(index(cell()));
+    }
+
+    /**
+     * Returns the cell the current thread uses.
+     *
+     * @return cell number
+     */
+    int cell() {
+        return (int) Thread.currentThread().getId() & mask;
+    }
+
+    int getCells() {
+        return mask + 1;
+    }
+
+    long get(int cell) {
+        return cells.get(index(cell));
+    }
+
+    boolean compareAndSet(int cell, long expect, long update) {
+        return cells.compareAndSet(index(cell), expect, update);
+    }
+
+    private static int index(int cell) {
+        return cell * STRIDE;
+    }
+
+}
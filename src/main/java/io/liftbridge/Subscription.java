@@ -2,11 +2,25 @@ package io.liftbridge;
 
 import io.grpc.Context;
 
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@code Subscription} to a stream partition, or to all partitions of a stream when returned by
+ * {@link Client#subscribeAll}. A partition subscription stays the same across automatic resubscriptions.
+ */
 public class Subscription {
 
+    private final List<Subscription> subscriptions;
     private Context.CancellableContext context;
+    private boolean unsubscribed;
+
+    Subscription() {
+        this(Collections.emptyList());
+    }
 
-    private Subscription() {
+    private Subscription(List<Subscription> subscriptions) {
+        this.subscriptions = subscriptions;
     }
 
     static Subscription fromGrpc(Context.CancellableContext ctx) {
@@ -15,8 +29,50 @@ public class Subscription {
         return sub;
     }
 
+    /**
+     * Creates a {@code Subscription} which unsubscribes all the given subscriptions together.
+     *
+     * @param subscriptions subscriptions to combine
+     * @return composite {@code Subscription}
+     */
+    static Subscription composite(List<Subscription> subscriptions) {
+        return new Subscription(subscriptions);
+    }
+
+    /**
+     * Makes this subscription control the stream of the given subscription, which replaces the previous stream after
+     * resubscribing. If this subscription was already unsubscribed, the new stream is closed instead.
+     *
+     * @param replacement subscription to the new stream
+     * @return false if this subscription was already unsubscribed
+     */
+    synchronized boolean replaceWith(Subscription replacement) {
+        if (unsubscribed) {
+            replacement.unsubscribe();
+            return false;
+        }
+        context = replacement.context;
+        return true;
+    }
+
+    synchronized boolean isUnsubscribed() {
+        return unsubscribed;
+    }
+
+    /**
+     * Closes the subscription. For a subscription to all partitions of a stream, this closes each partition's
+     * subscription.
+     */
     public void unsubscribe() {
-        context.close();
+        synchronized (this) {
+            unsubscribed = true;
+            if (context != null) {
+                context.close();
+            }
+        }
+        for (Subscription sub : subscriptions) {
+            sub.unsubscribe();
+        }
     }
 
 }
@@ -4,6 +4,7 @@ import io.liftbridge.proto.Api;
 
 import java.time.Instant;
 import java.time.temporal.TemporalAmount;
+import java.util.concurrent.Executor;
 
 /**
  *
@@ -13,6 +14,10 @@ public class SubscriptionOptions {
     private int partition = 0;
     private StartPosition startPosition = new StartAtNewOnly();
     private boolean readIsrReplica;
+    private int prefetchCount;
+    private long prefetchBytes;
+    private Executor executor;
+    private OffsetStore offsetStore;
 
     public SubscriptionOptions() {
     }
@@ -82,6 +87,21 @@ public class SubscriptionOptions {
         return this;
     }
 
+    /**
+     * Returns a copy of these options which consumes the given partition.
+     */
+    SubscriptionOptions forPartition(int partition) {
+        SubscriptionOptions opts = new SubscriptionOptions();
+        opts.partition = partition;
+        opts.startPosition = startPosition;
+        opts.readIsrReplica = readIsrReplica;
+        opts.prefetchCount = prefetchCount;
+        opts.prefetchBytes = prefetchBytes;
+        opts.executor = executor;
+        opts.offsetStore = offsetStore;
+        return opts;
+    }
+
     Api.SubscribeRequest toProto(String streamName) {
         Api.SubscribeRequest.Builder requestBuilder =
                 Api.SubscribeRequest.newBuilder()
@@ -105,6 +125,78 @@ public class SubscriptionOptions {
         this.readIsrReplica = true;
     }
 
+    /**
+     * Sets the maximum number of messages which have been requested from the broker or are waiting for the handler to
+     * consume them. More messages are only requested as the handler consumes earlier ones, so a slow handler slows
+     * down delivery instead of letting messages pile up in memory. Defaults to 0, which disables the limit.
+     *
+     * @param prefetchCount maximum number of prefetched messages, or 0 for no limit
+     * @return {@code this} to allow for chaining
+     */
+    public SubscriptionOptions setPrefetchCount(int prefetchCount) {
+        this.prefetchCount = prefetchCount;
+        return this;
+    }
+
+    public int getPrefetchCount() {
+        return prefetchCount;
+    }
+
+    /**
+     * Sets the maximum total size of the messages waiting for the handler to consume them. Once reached, no more
+     * messages are requested from the broker until the handler catches up. Without a prefetch count, messages are
+     * requested one at a time. Defaults to 0, which disables the limit.
+     *
+     * @param prefetchBytes maximum size of prefetched messages in bytes, or 0 for no limit
+     * @return {@code this} to allow for chaining
+     */
+    public SubscriptionOptions setPrefetchBytes(long prefetchBytes) {
+        this.prefetchBytes = prefetchBytes;
+        return this;
+    }
+
+    public long getPrefetchBytes() {
+        return prefetchBytes;
+    }
+
+    /**
+     * Sets the {@link Executor} the subscription's {@link MessageHandler} runs on. Handler calls are serialized, so
+     * messages are still handled one at a time and in partition order, but a slow handler no longer holds up the
+     * network thread and other streams sharing its connection. Any executor works, including one creating a virtual
+     * thread per task. Combine with {@link #setPrefetchCount} to bound the messages queued for the handler. Defaults
+     * to null, which runs the handler on the gRPC thread that received the message.
+     *
+     * @param executor {@code Executor} to run the handler on, or null to run it on the gRPC thread
+     * @return {@code this} to allow for chaining
+     */
+    public SubscriptionOptions setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Sets the {@link OffsetStore} the subscription resumes from and commits to. If the store has an offset for the
+     * partition, the subscription starts right after it regardless of the configured start position. The offset of
+     * each message is committed once its handler has returned, for batches and parallel subscriptions once every
+     * message up to it has been handled, and for a {@link PollingSubscription} by the next poll. Defaults to null,
+     * which neither resumes nor commits.
+     *
+     * @param offsetStore {@code OffsetStore} to resume from and commit to, or null
+     * @return {@code this} to allow for chaining
+     */
+    public SubscriptionOptions setOffsetStore(OffsetStore offsetStore) {
+        this.offsetStore = offsetStore;
+        return this;
+    }
+
+    public OffsetStore getOffsetStore() {
+        return offsetStore;
+    }
+
     abstract static class StartPosition {
         abstract Api.SubscribeRequest.Builder setRequestBuilderParameters(Api.SubscribeRequest.Builder builder);
     }
@@ -0,0 +1,22 @@
+package io.liftbridge;
+
+import org.junit.Ignore;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+@Ignore
+public class BasePartitionerTest {
+
+    static Metadata metadataWithPartitions(String stream, int count) {
+        Map<Integer, PartitionInfo> partitions = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            partitions.put(i, new PartitionInfo(i, null, new HashSet<>(), new HashSet<>()));
+        }
+        Map<String, StreamInfo> streams = new HashMap<>();
+        streams.put(stream, new StreamInfo(stream, stream, partitions));
+        return new Metadata(new HashMap<>(), streams);
+    }
+
+}
@@ -0,0 +1,313 @@
+package io.liftbridge;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+
+public class ClientFailoverTest {
+
+    private static final int LOG_SIZE = 200;
+
+    private FakeCluster cluster;
+    private Client client;
+
+    @Before
+    public void setupCluster() throws IOException {
+        cluster = new FakeCluster(LOG_SIZE, "a", "b");
+        client = cluster.clientBuilder().withMetadataRefreshInterval(20, TimeUnit.MILLISECONDS).build();
+    }
+
+    @After
+    public void tearDownCluster() {
+        client.close();
+        cluster.close();
+    }
+
+    private static List<Long> offsets(long from, long to) {
+        List<Long> offsets = new ArrayList<>();
+        for (long offset = from; offset < to; offset++) {
+            offsets.add(offset);
+        }
+        return offsets;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void testMoveOnLeaderChange() throws Exception {
+        List<Long> received = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger handling = new AtomicInteger();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        client.subscribe(FakeCluster.STREAM, new SubscriptionOptions().startAtEarliestReceived(),
+                new MessageHandler() {
+                    @Override
+                    public void onMessage(Message msg) {
+                        if (handling.incrementAndGet() > 1) {
+                            overlapped.set(true);
+                        }
+                        received.add(msg.getOffset());
+                        if (msg.getOffset() == 20) {
+                            // Still handling the message when the stream on the new leader opens and delivers.
+                            cluster.setLeader("b");
+                            await().atMost(5, TimeUnit.SECONDS)
+                                    .until(() -> !cluster.broker("b").subscriptions.isEmpty());
+                            sleep(50);
+                        }
+                        handling.decrementAndGet();
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        errors.add(t);
+                    }
+                });
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> received.size() >= LOG_SIZE);
+        sleep(100);
+        assertEquals(offsets(0, LOG_SIZE), received);
+        assertFalse("handler called concurrently", overlapped.get());
+        assertEquals(Collections.emptyList(), errors);
+        // The subscription moved once, resuming after the message being handled when it moved.
+        assertEquals(Collections.singletonList(0L), cluster.broker("a").subscriptions);
+        assertEquals(Collections.singletonList(21L), cluster.broker("b").subscriptions);
+    }
+
+    @Test
+    public void testMoveKeepsDemand() {
+        List<Long> received = Collections.synchronizedList(new ArrayList<>());
+        AtomicBoolean overflowed = new AtomicBoolean();
+        AtomicInteger demand = new AtomicInteger();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<org.reactivestreams.Subscription> subscription = new CompletableFuture<>();
+        new MessagePublisher(client, FakeCluster.STREAM, new SubscriptionOptions().startAtEarliestReceived())
+                .subscribe(new Subscriber<Message>() {
+                    @Override
+                    public void onSubscribe(org.reactivestreams.Subscription s) {
+                        subscription.complete(s);
+                        demand.incrementAndGet();
+                        s.request(1);
+                    }
+
+                    @Override
+                    public void onNext(Message msg) {
+                        if (demand.decrementAndGet() < 0) {
+                            overflowed.set(true);
+                        }
+                        received.add(msg.getOffset());
+                        if (msg.getOffset() == 20) {
+                            cluster.setLeader("b");
+                        }
+                        sleep(2);
+                        // Ask for one message at a time, so a single lost request stalls the subscriber.
+                        demand.incrementAndGet();
+                        subscription.join().request(1);
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        errors.add(t);
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        errors.add(new AssertionError("unexpected completion"));
+                    }
+                });
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> received.size() >= LOG_SIZE);
+        sleep(100);
+        subscription.join().cancel();
+        assertEquals(offsets(0, LOG_SIZE), received);
+        assertFalse("delivered more than requested", overflowed.get());
+        assertEquals(Collections.emptyList(), errors);
+        assertEquals(1, cluster.broker("b").subscriptions.size());
+    }
+
+    @Test
+    public void testResubscribeAfterUnavailable() throws Exception {
+        cluster.broker("a").failAt = 50;
+        List<Long> received = Collections.synchronizedList(new ArrayList<>());
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        client.subscribe(FakeCluster.STREAM, new SubscriptionOptions().startAtEarliestReceived(),
+                new MessageHandler() {
+                    @Override
+                    public void onMessage(Message msg) {
+                        received.add(msg.getOffset());
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        errors.add(t);
+                    }
+                });
+
+        await().atMost(10, TimeUnit.SECONDS).until(() -> received.size() >= LOG_SIZE);
+        sleep(100);
+        assertEquals(offsets(0, LOG_SIZE), received);
+        assertEquals(Collections.emptyList(), errors);
+        // The broker is still the leader, so the subscription resumes there after the last received message.
+        assertEquals(Arrays.asList(0L, 50L), cluster.broker("a").subscriptions);
+        assertTrue(cluster.broker("b").subscriptions.isEmpty());
+    }
+
+    @Test
+    public void testResubscribeGivesUp() throws Exception {
+        FakeCluster.Broker broker = cluster.broker("a");
+        broker.failAt = 20;
+        List<Long> received = Collections.synchronizedList(new ArrayList<>());
+        CompletableFuture<Throwable> error = new CompletableFuture<>();
+        client.subscribe(FakeCluster.STREAM, new SubscriptionOptions().startAtEarliestReceived(),
+                new MessageHandler() {
+                    @Override
+                    public void onMessage(Message msg) {
+                        received.add(msg.getOffset());
+                        if (msg.getOffset() == 10) {
+                            // The broker goes down for good once the stream fails.
+                            broker.down = true;
+                        }
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        error.complete(t);
+                    }
+                });
+
+        // Backing off between attempts takes about 9 seconds in all.
+        Throwable t = error.get(30, TimeUnit.SECONDS);
+        assertTrue(t instanceof StatusRuntimeException);
+        assertEquals(Status.Code.UNAVAILABLE, ((StatusRuntimeException) t).getStatus().getCode());
+        assertEquals(offsets(0, 20), received);
+        // The first subscription and 10 attempts to resume after the last received message.
+        List<Long> subscriptions = broker.subscriptions;
+        assertEquals(11, subscriptions.size());
+        assertEquals(Long.valueOf(0), subscriptions.get(0));
+        for (long start : subscriptions.subList(1, subscriptions.size())) {
+            assertEquals(20, start);
+        }
+        sleep(200);
+        assertEquals(11, broker.subscriptions.size());
+    }
+
+    @Test
+    public void testPipelinePublishesToLeader() throws Exception {
+        AtomicBoolean moved = new AtomicBoolean();
+        client.addMetadataListener(diff -> moved.set(true));
+        cluster.setLeader("b");
+        await().atMost(5, TimeUnit.SECONDS).untilTrue(moved);
+        PublishPipeline pipeline = new PublishPipeline(client, 4);
+        MessageOptions opts = new MessageOptions().setAckDeadline(1, TimeUnit.SECONDS);
+
+        List<String> first = publish(pipeline, opts, 20);
+        // The leader goes away, so the next messages are retried on the new one.
+        cluster.broker("b").down = true;
+        cluster.setLeader("a");
+        List<String> second = publish(pipeline, opts, 20);
+        pipeline.close();
+
+        // Each message went to the partition leader once, not to the broker the client bootstrapped from.
+        assertEquals(new HashSet<>(first), new HashSet<>(cluster.broker("b").published));
+        assertEquals(20, cluster.broker("b").published.size());
+        assertEquals(new HashSet<>(second), new HashSet<>(cluster.broker("a").published));
+        assertEquals(20, cluster.broker("a").published.size());
+    }
+
+    @Test
+    public void testPublishBacksOffWhileLeaderDown() throws Exception {
+        cluster.broker("a").down = true;
+        cluster.broker("b").down = true;
+        MessageOptions opts = new MessageOptions().setAckDeadline(1, TimeUnit.SECONDS);
+
+        // Nine retries, the first right away and the rest backing off from 20ms up to 1s, take 3.26 seconds.
+        long start = System.nanoTime();
+        try {
+            client.publish(FakeCluster.STREAM, null, opts);
+            fail("Expected StatusRuntimeException");
+        } catch (StatusRuntimeException e) {
+            assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+        }
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(3260));
+
+        start = System.nanoTime();
+        try {
+            client.publishAsync(FakeCluster.STREAM, null, opts).get(10, TimeUnit.SECONDS);
+            fail("Expected StatusRuntimeException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof StatusRuntimeException);
+            assertEquals(Status.Code.UNAVAILABLE, ((StatusRuntimeException) e.getCause()).getStatus().getCode());
+        }
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(3260));
+    }
+
+    @Test
+    public void testPublishAsyncFailsWhenRetryCannotStart() throws Exception {
+        AtomicBoolean unreachable = new AtomicBoolean();
+        Client dialing = cluster.clientBuilder()
+                .withChannelFactory(addr -> {
+                    if (unreachable.get()) {
+                        throw new IllegalStateException("cannot dial " + addr);
+                    }
+                    return cluster.newChannel(addr);
+                })
+                .build();
+        try {
+            MessageOptions opts = new MessageOptions().setAckDeadline(1, TimeUnit.SECONDS);
+            dialing.publishAsync(FakeCluster.STREAM, null, opts).get(5, TimeUnit.SECONDS);
+
+            // The leader fails the publish and dialing it again for the retry throws.
+            cluster.broker("a").down = true;
+            unreachable.set(true);
+            try {
+                dialing.publishAsync(FakeCluster.STREAM, null, opts).get(5, TimeUnit.SECONDS);
+                fail("Expected ExecutionException");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        } finally {
+            dialing.close();
+        }
+    }
+
+    /**
+     * Publishes the given number of messages through the pipeline and returns the correlation IDs of their acks once
+     * all are acked.
+     */
+    private static List<String> publish(PublishPipeline pipeline, MessageOptions opts, int count) throws Exception {
+        List<CompletableFuture<Ack>> futures = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            futures.add(pipeline.publish(FakeCluster.STREAM, null, opts));
+        }
+        List<String> correlationIds = new ArrayList<>();
+        for (CompletableFuture<Ack> future : futures) {
+            correlationIds.add(future.get(5, TimeUnit.SECONDS).getCorrelationId());
+        }
+        assertEquals(count, new HashSet<>(correlationIds).size());
+        return correlationIds;
+    }
+
+}
@@ -12,6 +12,8 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import static java.util.concurrent.TimeUnit.*;
 import static org.awaitility.Awaitility.await;
@@ -38,6 +40,78 @@ public class ClientPublishTest extends BaseClientTest {
         client.publish(streamName, null, msgOpts);
     }
 
+    @Test
+    public void testPublishAsync() throws InterruptedException, ExecutionException {
+        MessageOptions msgOpts = new MessageOptions()
+                .setAckDeadline(1, SECONDS)
+                .setCorrelationId(CORRELATION_ID);
+        List<CompletableFuture<Ack>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            byte[] payload = ByteBuffer.allocate(4).putInt(i).array();
+            futures.add(client.publishAsync(streamName, payload, msgOpts));
+        }
+
+        List<Long> offsets = new ArrayList<>();
+        for (CompletableFuture<Ack> future : futures) {
+            Ack ack = future.get();
+            assertEquals("Received expected ack", CORRELATION_ID, ack.getCorrelationId());
+            offsets.add(ack.getOffset());
+        }
+        Collections.sort(offsets);
+        assertEquals("All messages were committed", Long.valueOf(9), offsets.get(9));
+    }
+
+    @Test
+    public void testPublishAsyncDeadlineExceeded() throws InterruptedException {
+        MessageOptions msgOpts = new MessageOptions().setAckDeadline(1, NANOSECONDS);
+        try {
+            client.publishAsync(streamName, null, msgOpts).get();
+            fail("Expected deadline to be exceeded");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof DeadlineExceededException);
+        }
+    }
+
+    @Test
+    public void testPublishBuffer() throws NoSuchPartitionException, DeadlineExceededException,
+            InterruptedException, ExecutionException {
+        MessageOptions msgOpts = new MessageOptions()
+                .setAckDeadline(1, SECONDS)
+                .setKey("key".getBytes());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(4).putInt(0);
+        direct.flip();
+        Ack ack = client.publishBuffer(streamName, direct, msgOpts);
+        assertEquals(0, ack.getOffset());
+        assertEquals("Buffer position is untouched", 0, direct.position());
+
+        ByteBuffer heap = ByteBuffer.allocate(8).putInt(-1).putInt(1);
+        heap.position(4);
+        ack = client.publishBufferAsync(streamName, heap, msgOpts).get();
+        assertEquals(1, ack.getOffset());
+
+        SubscriptionOptions subOpts = new SubscriptionOptions().startAtEarliestReceived();
+        final List<Integer> streamValues = new ArrayList<>();
+        Subscription sub = client.subscribe(streamName, subOpts, new MessageHandler() {
+            @Override
+            public void onMessage(Message msg) {
+                streamValues.add(ByteBuffer.wrap(msg.getValue()).getInt());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                fail(t.getMessage());
+            }
+        });
+
+        await().atMost(5, SECONDS).until(() -> streamValues.size() >= 2);
+        assertArrayEquals("Only the remaining bytes were sent",
+                new Integer[]{0, 1},
+                streamValues.toArray(new Integer[2]));
+
+        sub.unsubscribe();
+    }
+
     @Test
     public void testPublishToSubject() throws NoSuchPartitionException, DeadlineExceededException {
         MessageOptions msgOpts = new MessageOptions()
@@ -74,6 +148,27 @@ public class ClientPublishTest extends BaseClientTest {
         sub.unsubscribe();
     }
 
+    @Test
+    public void testPublishToPartition() throws StreamExistsException, NoSuchStreamException,
+            DeadlineExceededException, InterruptedException, ExecutionException {
+        String partitionedStream = streamName + "-partitioned";
+        client.createStream(partitionedStream, new StreamOptions().setPartitions(3));
+        try {
+            for (int partition = 0; partition < 3; partition++) {
+                MessageOptions msgOpts = new MessageOptions()
+                        .setAckDeadline(1, SECONDS)
+                        .setPartition(partition);
+                Ack ack = client.publish(partitionedStream, null, msgOpts);
+                assertEquals(partitionedStream, ack.getStream());
+                assertEquals(0, ack.getOffset());
+                ack = client.publishAsync(partitionedStream, null, msgOpts).get();
+                assertEquals(1, ack.getOffset());
+            }
+        } finally {
+            client.deleteStream(partitionedStream);
+        }
+    }
+
     @Test
     public void testPublishNoAck() throws DeadlineExceededException {
         // No ack when deadline is not set.
@@ -14,6 +14,12 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -188,4 +194,337 @@ public class ClientSubscribeTest extends BaseClientTest {
         sub.unsubscribe();
     }
 
+    @Test
+    public void testSubscribeMultiplexed() throws NoSuchPartitionException {
+        Client multiplexed = Client.Builder.create("localhost:9292").withMaxStreamsPerChannel(2).build();
+        SubscriptionOptions opts = new SubscriptionOptions().startAtEarliestReceived();
+        final AtomicLong received = new AtomicLong();
+        List<Subscription> subs = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            subs.add(multiplexed.subscribe(populatedStreamName, opts, new MessageHandler() {
+                @Override
+                public void onMessage(Message msg) {
+                    received.incrementAndGet();
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    fail(t.getMessage());
+                }
+            }));
+        }
+
+        await().atMost(5, SECONDS).until(() -> received.get() >= 30);
+        ConnectionStats stats = multiplexed.getConnectionStats().values().iterator().next();
+        assertEquals("Three streams share two channels", 2, stats.getChannels());
+        assertEquals(3, stats.getStreams());
+
+        for (Subscription sub : subs) {
+            sub.unsubscribe();
+        }
+        multiplexed.close();
+    }
+
+    @Test
+    public void testSubscribePrefetch() throws NoSuchPartitionException {
+        SubscriptionOptions opts = new SubscriptionOptions().startAtEarliestReceived().setPrefetchCount(2);
+        final List<Long> offsets = Collections.synchronizedList(new ArrayList<>());
+
+        Subscription sub = client.subscribe(populatedStreamName, opts, new MessageHandler() {
+            @Override
+            public void onMessage(Message msg) {
+                offsets.add(msg.getOffset());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                fail(t.getMessage());
+            }
+        });
+
+        await().atMost(5, SECONDS).until(() -> offsets.size() >= 10);
+        assertArrayEquals("All messages were received in order",
+                new Long[]{0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L},
+                offsets.toArray(new Long[0]));
+
+        sub.unsubscribe();
+    }
+
+    @Test
+    public void testSubscribeExecutor() throws NoSuchPartitionException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        SubscriptionOptions opts = new SubscriptionOptions().startAtEarliestReceived().setExecutor(executor);
+        final List<Long> offsets = Collections.synchronizedList(new ArrayList<>());
+        final List<String> threads = Collections.synchronizedList(new ArrayList<>());
+
+        Subscription sub = client.subscribe(populatedStreamName, opts, new MessageHandler() {
+            @Override
+            public void onMessage(Message msg) {
+                threads.add(Thread.currentThread().getName());
+                offsets.add(msg.getOffset());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                fail(t.getMessage());
+            }
+        });
+
+        await().atMost(5, SECONDS).until(() -> offsets.size() >= 10);
+        assertArrayEquals("All messages were received in order",
+                new Long[]{0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L},
+                offsets.toArray(new Long[0]));
+        for (String thread : threads) {
+            assertTrue("Handler ran on the executor", thread.startsWith("pool-"));
+        }
+
+        sub.unsubscribe();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSubscribeAll() throws StreamExistsException, NoSuchStreamException, NoSuchPartitionException,
+            DeadlineExceededException {
+        String partitionedStream = streamName + "-partitioned";
+        client.createStream(partitionedStream, new StreamOptions().setPartitions(3));
+        try {
+            for (int partition = 0; partition < 3; partition++) {
+                MessageOptions msgOpts = new MessageOptions().setAckDeadline(1, SECONDS).setPartition(partition);
+                client.publish(partitionedStream, null, msgOpts);
+                client.publish(partitionedStream, null, msgOpts);
+            }
+            SubscriptionOptions opts = new SubscriptionOptions().startAtEarliestReceived();
+            final List<String> received = Collections.synchronizedList(new ArrayList<>());
+
+            Subscription sub = client.subscribeAll(partitionedStream, opts, new MessageHandler() {
+                @Override
+                public void onMessage(Message msg) {
+                    received.add(msg.getPartition() + ":" + msg.getOffset());
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    fail(t.getMessage());
+                }
+            });
+
+            await().atMost(5, SECONDS).until(() -> received.size() >= 6);
+            Collections.sort(received);
+            assertArrayEquals("All partitions were received",
+                    new String[]{"0:0", "0:1", "1:0", "1:1", "2:0", "2:1"},
+                    received.toArray(new String[0]));
+
+            sub.unsubscribe();
+        } finally {
+            client.deleteStream(partitionedStream);
+        }
+    }
+
+    @Test(expected = NoSuchStreamException.class)
+    public void testSubscribeAllNonExistentStream() throws NoSuchStreamException, NoSuchPartitionException {
+        client.subscribeAll(randomAlphabetic(15), new SubscriptionOptions(), new MessageHandler() {
+            @Override
+            public void onMessage(Message msg) {
+                fail("Received unexpected message");
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                fail(t.getMessage());
+            }
+        });
+    }
+
+    @Test
+    public void testSubscribeAsync() throws InterruptedException, ExecutionException {
+        SubscriptionOptions opts = new SubscriptionOptions().startAtEarliestReceived();
+        final AtomicLong received = new AtomicLong();
+        List<CompletableFuture<Subscription>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 20; i++) {
+            futures.add(client.subscribeAsync(populatedStreamName, opts, new MessageHandler() {
+                @Override
+                public void onMessage(Message msg) {
+                    received.incrementAndGet();
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                    fail(t.getMessage());
+                }
+            }));
+        }
+
+        await().atMost(5, SECONDS).until(() -> received.get() >= 200);
+        for (CompletableFuture<Subscription> future : futures) {
+            future.get().unsubscribe();
+        }
+    }
+
+    @Test
+    public void testSubscribePublisher() throws InterruptedException {
+        MessagePublisher publisher = new MessagePublisher(client, populatedStreamName,
+                new SubscriptionOptions().startAtEarliestReceived());
+        final List<Long> offsets = Collections.synchronizedList(new ArrayList<>());
+        final CompletableFuture<org.reactivestreams.Subscription> subscription = new CompletableFuture<>();
+
+        publisher.subscribe(new org.reactivestreams.Subscriber<Message>() {
+            @Override
+            public void onSubscribe(org.reactivestreams.Subscription s) {
+                subscription.complete(s);
+                s.request(3);
+            }
+
+            @Override
+            public void onNext(Message msg) {
+                offsets.add(msg.getOffset());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                fail(t.getMessage());
+            }
+
+            @Override
+            public void onComplete() {
+                fail("Unexpected completion");
+            }
+        });
+
+        await().atMost(5, SECONDS).until(() -> offsets.size() == 3);
+        // Nothing is sent beyond the requested messages.
+        Thread.sleep(200);
+        assertEquals(3, offsets.size());
+
+        subscription.join().request(7);
+
+        await().atMost(5, SECONDS).until(() -> offsets.size() == 10);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, (long) offsets.get(i));
+        }
+        subscription.join().cancel();
+    }
+
+    @Test
+    public void testSubscribePolling() throws Exception {
+        PollingSubscription polling = client.subscribePolling(populatedStreamName,
+                new SubscriptionOptions().startAtEarliestReceived(), 4);
+        List<Message> msgs = new ArrayList<>();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (msgs.size() < 10 && System.currentTimeMillis() < deadline) {
+            List<Message> polled = polling.poll(100, MILLISECONDS);
+            assertTrue(polled.size() <= polling.getCapacity());
+            msgs.addAll(polled);
+        }
+
+        assertEquals(10, msgs.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, msgs.get(i).getOffset());
+        }
+        polling.unsubscribe();
+        assertTrue(polling.poll(1, SECONDS).isEmpty());
+    }
+
+    @Test
+    public void testSubscribeParallel() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        final AtomicLong received = new AtomicLong();
+        ParallelSubscription sub = client.subscribeParallel(populatedStreamName,
+                new SubscriptionOptions().startAtEarliestReceived(),
+                new ParallelOptions().setExecutor(executor), new MessageHandler() {
+                    @Override
+                    public void onMessage(Message msg) {
+                        received.incrementAndGet();
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        fail(t.getMessage());
+                    }
+                });
+
+        await().atMost(5, SECONDS).until(() -> received.get() == 10);
+        await().atMost(5, SECONDS).until(() -> sub.getCompletedOffset(0) == 9);
+        assertEquals(Collections.singletonMap(0, 9L), sub.getCompletedOffsets());
+        sub.unsubscribe();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSubscribeOffsetStore() throws Exception {
+        InMemoryOffsetStore store = new InMemoryOffsetStore();
+        SubscriptionOptions opts = new SubscriptionOptions().startAtEarliestReceived().setOffsetStore(store);
+        final List<Long> offsets = Collections.synchronizedList(new ArrayList<>());
+        MessageHandler handler = new MessageHandler() {
+            @Override
+            public void onMessage(Message msg) {
+                offsets.add(msg.getOffset());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                fail(t.getMessage());
+            }
+        };
+
+        Subscription sub = client.subscribe(populatedStreamName, opts, handler);
+        await().atMost(5, SECONDS).until(() -> store.getOffset(populatedStreamName, 0) == 9);
+        sub.unsubscribe();
+
+        // Resubscribing continues after the committed offset despite starting at the earliest message.
+        offsets.clear();
+        sub = client.subscribe(populatedStreamName, opts, handler);
+        client.publish(populatedStreamName, "hello".getBytes(),
+                new MessageOptions().setAckDeadline(1, SECONDS));
+        await().atMost(5, SECONDS).until(() -> offsets.size() == 1);
+        assertEquals(10, (long) offsets.get(0));
+        sub.unsubscribe();
+    }
+
+    @Test
+    public void testSubscribeAsyncNonExistentStream() throws InterruptedException {
+        CompletableFuture<Subscription> future = client.subscribeAsync(randomAlphabetic(15), new SubscriptionOptions(),
+                new MessageHandler() {
+                    @Override
+                    public void onMessage(Message msg) {
+                        fail("Received unexpected message");
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        fail(t.getMessage());
+                    }
+                });
+
+        try {
+            future.get();
+            fail("Expected NoSuchPartitionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof NoSuchPartitionException);
+        }
+    }
+
+    private static class InMemoryOffsetStore implements OffsetStore {
+        private final Map<String, Long> offsets = new ConcurrentHashMap<>();
+
+        @Override
+        public long getOffset(String stream, int partition) {
+            return offsets.getOrDefault(stream + "/" + partition, -1L);
+        }
+
+        @Override
+        public void commit(String stream, int partition, long offset) {
+            offsets.merge(stream + "/" + partition, offset, Math::max);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
 }
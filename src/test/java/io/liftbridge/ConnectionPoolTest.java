@@ -1,7 +1,10 @@
 package io.liftbridge;
 
 import org.junit.Test;
-import static org.junit.Assert.assertEquals;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 public class ConnectionPoolTest {
@@ -53,7 +56,7 @@ public class ConnectionPoolTest {
     }
 
     @Test
-    public void testPutConnExpired() throws InterruptedException {
+    public void testPutConnExpired() {
         ConnectionPool.ConnectionFactory mockFactory = mock(ConnectionPool.ConnectionFactory.class);
         ManagedAPIClient expected = mock(ManagedAPIClient.class);
         when(mockFactory.newConnection()).thenReturn(expected);
@@ -62,10 +65,76 @@ public class ConnectionPoolTest {
 
         pool.put(conn);
 
-        Thread.sleep(5);
+        // Keep-alive timeouts fire on the timer's next tick.
+        await().atMost(1, SECONDS).untilAsserted(() -> verify(conn, times(1)).close());
+        pool.close();
+    }
+
+    @Test
+    public void testGetCancelsExpiry() throws InterruptedException {
+        ConnectionPool.ConnectionFactory mockFactory = mock(ConnectionPool.ConnectionFactory.class);
+        ManagedAPIClient expected = mock(ManagedAPIClient.class);
+        when(mockFactory.newConnection()).thenReturn(expected);
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, MILLISECONDS, 8);
+        ConnectionPool pool = new ConnectionPool(1, 50, 0, timer);
+        ManagedAPIClient conn = pool.get(mockFactory);
+
+        pool.put(conn);
+        pool.get(mockFactory);
+
+        Thread.sleep(200);
+        verify(conn, never()).close();
+        timer.stop();
+    }
+
+    @Test
+    public void testPutAfterClose() {
+        ConnectionPool.ConnectionFactory mockFactory = mock(ConnectionPool.ConnectionFactory.class);
+        ManagedAPIClient expected = mock(ManagedAPIClient.class);
+        when(mockFactory.newConnection()).thenReturn(expected);
+        ConnectionPool pool = new ConnectionPool(2, 30 * 1000);
+        ManagedAPIClient conn = pool.get(mockFactory);
+
+        pool.close();
+        pool.put(conn);
+
         verify(conn, times(1)).close();
     }
 
+    @Test
+    public void testGetShared() {
+        ConnectionPool.ConnectionFactory mockFactory = mock(ConnectionPool.ConnectionFactory.class);
+        ManagedAPIClient expected = mock(ManagedAPIClient.class);
+        when(mockFactory.newConnection()).thenReturn(expected);
+        ConnectionPool pool = new ConnectionPool(2, 30 * 1000);
+
+        ManagedAPIClient first = pool.getShared(mockFactory);
+        ManagedAPIClient second = pool.getShared(mockFactory);
+
+        assertEquals(expected, first);
+        assertEquals(first, second);
+        verify(mockFactory, times(1)).newConnection();
+    }
+
+    @Test
+    public void testResetShared() {
+        ConnectionPool.ConnectionFactory mockFactory = mock(ConnectionPool.ConnectionFactory.class);
+        ManagedAPIClient failed = mock(ManagedAPIClient.class);
+        ManagedAPIClient replacement = mock(ManagedAPIClient.class);
+        when(mockFactory.newConnection()).thenReturn(failed, replacement);
+        ConnectionPool pool = new ConnectionPool(2, 30 * 1000);
+        assertFalse(pool.hasShared());
+        ManagedAPIClient conn = pool.getShared(mockFactory);
+        assertTrue(pool.hasShared());
+
+        pool.resetShared(conn);
+        pool.resetShared(conn);
+
+        verify(failed, times(1)).close();
+        assertFalse(pool.hasShared());
+        assertEquals(replacement, pool.getShared(mockFactory));
+    }
+
     @Test
     public void testClose() {
         ConnectionPool.ConnectionFactory mockFactory = mock(ConnectionPool.ConnectionFactory.class);
@@ -76,9 +145,106 @@ public class ConnectionPoolTest {
         pool.put(conn);
         pool.put(conn);
 
+        ManagedAPIClient shared = mock(ManagedAPIClient.class);
+        when(mockFactory.newConnection()).thenReturn(shared);
+        pool.getShared(mockFactory);
+
         pool.close();
 
         verify(conn, times(2)).close();
+        verify(shared, times(1)).close();
+    }
+
+    @Test
+    public void testAcquireStreamExclusive() {
+        ConnectionPool.ConnectionFactory mockFactory = mock(ConnectionPool.ConnectionFactory.class);
+        when(mockFactory.newConnection()).thenReturn(mock(ManagedAPIClient.class), mock(ManagedAPIClient.class));
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, MILLISECONDS, 8);
+        ConnectionPool pool = new ConnectionPool(2, 30 * 1000, 0, timer);
+
+        ManagedAPIClient first = pool.acquireStream(mockFactory);
+        ManagedAPIClient second = pool.acquireStream(mockFactory);
+
+        assertNotSame(first, second);
+        assertEquals(2, pool.stats().getChannels());
+        assertEquals(2, pool.stats().getStreams());
+
+        pool.releaseStream(first);
+
+        assertEquals(2, pool.stats().getChannels());
+        assertEquals(1, pool.stats().getStreams());
+        pool.close();
+        timer.stop();
+    }
+
+    @Test
+    public void testAcquireStreamMultiplexed() {
+        ConnectionPool.ConnectionFactory mockFactory = mock(ConnectionPool.ConnectionFactory.class);
+        when(mockFactory.newConnection()).thenReturn(mock(ManagedAPIClient.class), mock(ManagedAPIClient.class));
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, MILLISECONDS, 8);
+        ConnectionPool pool = new ConnectionPool(2, 30 * 1000, 2, timer);
+
+        ManagedAPIClient first = pool.acquireStream(mockFactory);
+        ManagedAPIClient second = pool.acquireStream(mockFactory);
+        ManagedAPIClient third = pool.acquireStream(mockFactory);
+
+        assertSame(first, second);
+        assertNotSame(first, third);
+        verify(mockFactory, times(2)).newConnection();
+        assertEquals(2, pool.stats().getChannels());
+        assertEquals(3, pool.stats().getStreams());
+
+        // The least loaded channel with room is picked.
+        pool.releaseStream(first);
+        ManagedAPIClient fourth = pool.acquireStream(mockFactory);
+
+        assertSame(first, fourth);
+        verify(mockFactory, times(2)).newConnection();
+        assertEquals(3, pool.stats().getStreams());
+        pool.close();
+        timer.stop();
+    }
+
+    @Test
+    public void testReleaseStreamExpired() {
+        ConnectionPool.ConnectionFactory mockFactory = mock(ConnectionPool.ConnectionFactory.class);
+        ManagedAPIClient expected = mock(ManagedAPIClient.class);
+        when(mockFactory.newConnection()).thenReturn(expected);
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, MILLISECONDS, 8);
+        ConnectionPool pool = new ConnectionPool(2, 1, 10, timer);
+        ManagedAPIClient first = pool.acquireStream(mockFactory);
+        pool.acquireStream(mockFactory);
+
+        pool.releaseStream(first);
+
+        verify(expected, never()).close();
+
+        pool.releaseStream(first);
+
+        await().atMost(1, SECONDS).untilAsserted(() -> verify(expected, times(1)).close());
+        assertEquals(0, pool.stats().getChannels());
+        assertEquals(0, pool.stats().getStreams());
+        timer.stop();
+    }
+
+    @Test
+    public void testCloseMultiplexed() {
+        ConnectionPool.ConnectionFactory mockFactory = mock(ConnectionPool.ConnectionFactory.class);
+        ManagedAPIClient expected = mock(ManagedAPIClient.class);
+        when(mockFactory.newConnection()).thenReturn(expected);
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, MILLISECONDS, 8);
+        ConnectionPool pool = new ConnectionPool(2, 30 * 1000, 10, timer);
+        ManagedAPIClient conn = pool.acquireStream(mockFactory);
+
+        pool.close();
+
+        // The channel still carries a stream, so it is closed once the stream is released.
+        verify(conn, never()).close();
+
+        pool.releaseStream(conn);
+
+        verify(conn, times(1)).close();
+        timer.stop();
     }
 
 }
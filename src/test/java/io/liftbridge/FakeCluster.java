@@ -0,0 +1,200 @@
+package io.liftbridge;
+
+import com.google.protobuf.ByteString;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import io.liftbridge.proto.APIGrpc;
+import io.liftbridge.proto.Api;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Liftbridge cluster of brokers running in the test process, serving a single stream partition whose log holds a
+ * fixed number of messages. Brokers answer metadata requests with the current leader and serve subscriptions from
+ * any offset, sending messages only as fast as the client requests them. Published messages are acked but not added
+ * to the log.
+ */
+class FakeCluster implements AutoCloseable {
+
+    static final String STREAM = "foo";
+
+    private final int logSize;
+    private final String name = UUID.randomUUID().toString();
+    private final List<Broker> brokers = new ArrayList<>();
+    private final List<Server> servers = new ArrayList<>();
+    private volatile Broker leader;
+
+    /**
+     * Starts brokers with the given IDs, the first one leading the partition.
+     *
+     * @param logSize   number of messages in the partition, at offsets 0 to {@code logSize - 1}
+     * @param brokerIds IDs of the brokers, also used as their host names
+     */
+    FakeCluster(int logSize, String... brokerIds) throws IOException {
+        this.logSize = logSize;
+        for (int i = 0; i < brokerIds.length; i++) {
+            Broker broker = new Broker(brokerIds[i], 9292 + i);
+            brokers.add(broker);
+            servers.add(InProcessServerBuilder.forName(name + "/" + broker.getAddr())
+                    .addService(broker)
+                    .build()
+                    .start());
+        }
+        this.leader = brokers.get(0);
+    }
+
+    /**
+     * Returns a {@link Client.Builder} connecting to the first broker.
+     */
+    Client.Builder clientBuilder() {
+        return Client.Builder.create(brokers.get(0).getAddr()).withChannelFactory(this::newChannel);
+    }
+
+    /**
+     * Opens a channel to the broker at the given address.
+     */
+    ManagedChannel newChannel(String addr) {
+        return InProcessChannelBuilder.forName(name + "/" + addr).build();
+    }
+
+    Broker broker(String id) {
+        for (Broker broker : brokers) {
+            if (broker.id.equals(id)) {
+                return broker;
+            }
+        }
+        throw new IllegalArgumentException("no broker " + id);
+    }
+
+    /**
+     * Makes the given broker the partition leader, which clients learn on their next metadata refresh.
+     */
+    void setLeader(String id) {
+        leader = broker(id);
+    }
+
+    @Override
+    public void close() {
+        for (Server server : servers) {
+            server.shutdownNow();
+        }
+    }
+
+    class Broker extends APIGrpc.APIImplBase {
+
+        private final String id;
+        private final int port;
+        // Offset each subscription request started at, in the order they were made, including refused ones.
+        final List<Long> subscriptions = new CopyOnWriteArrayList<>();
+        // Offset at which subscriptions fail as if the broker went away, or -1.
+        volatile long failAt = -1;
+        // Correlation IDs of the messages published to the broker, in the order they arrived.
+        final List<String> published = new CopyOnWriteArrayList<>();
+        // Whether subscriptions and publishes fail right away as if the broker was down.
+        volatile boolean down;
+
+        Broker(String id, int port) {
+            this.id = id;
+            this.port = port;
+        }
+
+        String getAddr() {
+            return id + ":" + port;
+        }
+
+        @Override
+        public void fetchMetadata(Api.FetchMetadataRequest request,
+                                  StreamObserver<Api.FetchMetadataResponse> responseObserver) {
+            Api.FetchMetadataResponse.Builder response = Api.FetchMetadataResponse.newBuilder();
+            Api.PartitionMetadata.Builder partition = Api.PartitionMetadata.newBuilder()
+                    .setId(0)
+                    .setLeader(leader.id)
+                    .addIsr(leader.id);
+            for (Broker broker : brokers) {
+                response.addBrokers(Api.Broker.newBuilder().setId(broker.id).setHost(broker.id).setPort(broker.port));
+                partition.addReplicas(broker.id);
+            }
+            response.addMetadata(Api.StreamMetadata.newBuilder()
+                    .setName(STREAM)
+                    .setSubject(STREAM)
+                    .putPartitions(0, partition.build()));
+            responseObserver.onNext(response.build());
+            responseObserver.onCompleted();
+        }
+
+        @Override
+        public void subscribe(Api.SubscribeRequest request, StreamObserver<Api.Message> responseObserver) {
+            long start = request.getStartPosition() == Api.StartPosition.OFFSET ? request.getStartOffset() : 0;
+            subscriptions.add(start);
+            if (down) {
+                responseObserver.onError(Status.UNAVAILABLE.asRuntimeException());
+                return;
+            }
+            if (!request.getStream().equals(STREAM) || request.getPartition() != 0) {
+                responseObserver.onError(Status.NOT_FOUND.asRuntimeException());
+                return;
+            }
+            ServerCallStreamObserver<Api.Message> call = (ServerCallStreamObserver<Api.Message>) responseObserver;
+            // The handshake.
+            call.onNext(Api.Message.getDefaultInstance());
+            Thread sender = new Thread(() -> send(call, start), "fake-broker-" + id);
+            sender.setDaemon(true);
+            sender.start();
+        }
+
+        @Override
+        public void publish(Api.PublishRequest request, StreamObserver<Api.PublishResponse> responseObserver) {
+            if (down) {
+                responseObserver.onError(Status.UNAVAILABLE.asRuntimeException());
+                return;
+            }
+            published.add(request.getCorrelationId());
+            responseObserver.onNext(Api.PublishResponse.newBuilder()
+                    .setAck(Api.Ack.newBuilder()
+                            .setStream(request.getStream())
+                            .setCorrelationId(request.getCorrelationId())
+                            .setAckPolicy(request.getAckPolicy()))
+                    .build());
+            responseObserver.onCompleted();
+        }
+
+        private void send(ServerCallStreamObserver<Api.Message> call, long start) {
+            for (long offset = start; offset < logSize; offset++) {
+                while (!call.isReady()) {
+                    if (call.isCancelled()) {
+                        return;
+                    }
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (call.isCancelled()) {
+                    return;
+                }
+                if (offset == failAt) {
+                    failAt = -1;
+                    call.onError(Status.UNAVAILABLE.asRuntimeException());
+                    return;
+                }
+                call.onNext(Api.Message.newBuilder()
+                        .setStream(STREAM)
+                        .setPartition(0)
+                        .setOffset(offset)
+                        .setValue(ByteString.copyFromUtf8("message " + offset))
+                        .build());
+            }
+        }
+    }
+
+}
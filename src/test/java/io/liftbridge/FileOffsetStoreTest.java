@@ -0,0 +1,85 @@
+package io.liftbridge;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+
+public class FileOffsetStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCommitFlushReopen() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("offsets");
+        try (FileOffsetStore store = new FileOffsetStore(path)) {
+            assertEquals(-1, store.getOffset("foo", 0));
+
+            store.commit("foo", 0, 10);
+            store.commit("foo", 1, 20);
+            store.commit("bar", 0, 30);
+            // Lower offsets are ignored.
+            store.commit("foo", 0, 5);
+
+            assertEquals(10, store.getOffset("foo", 0));
+            store.flush();
+        }
+
+        try (FileOffsetStore store = new FileOffsetStore(path)) {
+            assertEquals(10, store.getOffset("foo", 0));
+            assertEquals(20, store.getOffset("foo", 1));
+            assertEquals(30, store.getOffset("bar", 0));
+            assertEquals(-1, store.getOffset("bar", 1));
+        }
+        assertFalse(Files.exists(path.resolveSibling("offsets.tmp")));
+    }
+
+    @Test
+    public void testWriteAfterCommitCount() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("offsets");
+        FileOffsetStore store = new FileOffsetStore(path, 3, 1, DAYS);
+        store.commit("foo", 0, 1);
+        store.commit("foo", 0, 2);
+
+        assertFalse(Files.exists(path));
+
+        store.commit("foo", 0, 3);
+
+        await().atMost(5, SECONDS).until(() -> Files.exists(path));
+        try (FileOffsetStore reopened = new FileOffsetStore(path)) {
+            assertEquals(3, reopened.getOffset("foo", 0));
+        }
+        store.close();
+    }
+
+    @Test
+    public void testWriteAfterCommitInterval() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("offsets");
+        FileOffsetStore store = new FileOffsetStore(path, 1000, 50, MILLISECONDS);
+        store.commit("foo", 0, 1);
+
+        await().atMost(5, SECONDS).until(() -> Files.exists(path));
+        try (FileOffsetStore reopened = new FileOffsetStore(path)) {
+            assertEquals(1, reopened.getOffset("foo", 0));
+        }
+        store.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidFile() throws IOException {
+        Path path = folder.newFile("offsets").toPath();
+        Files.write(path, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        new FileOffsetStore(path);
+    }
+
+}
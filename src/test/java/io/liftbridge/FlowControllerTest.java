@@ -0,0 +1,161 @@
+package io.liftbridge;
+
+import io.grpc.stub.ClientCallStreamObserver;
+import io.liftbridge.proto.Api;
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.*;
+
+public class FlowControllerTest {
+
+    @SuppressWarnings("unchecked")
+    private static ClientCallStreamObserver<Api.SubscribeRequest> mockCall() {
+        return mock(ClientCallStreamObserver.class);
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        assertNull(FlowController.create(new SubscriptionOptions()));
+    }
+
+    @Test
+    public void testPrefetchCount() {
+        ClientCallStreamObserver<Api.SubscribeRequest> call = mockCall();
+        FlowController flow = FlowController.create(new SubscriptionOptions().setPrefetchCount(3));
+        flow.start(call);
+
+        verify(call).disableAutoInboundFlowControl();
+
+        flow.handshake();
+
+        verify(call).request(3);
+
+        flow.received(10);
+        flow.received(10);
+        flow.received(10);
+
+        verifyNoMoreInteractions(call);
+
+        flow.consumed(10);
+
+        verify(call).request(1);
+
+        flow.consumed(10);
+        flow.consumed(10);
+
+        verify(call, times(3)).request(1);
+    }
+
+    @Test
+    public void testPrefetchBytes() {
+        ClientCallStreamObserver<Api.SubscribeRequest> call = mockCall();
+        FlowController flow = FlowController.create(new SubscriptionOptions().setPrefetchBytes(100));
+        flow.start(call);
+        flow.handshake();
+
+        verify(call).request(1);
+
+        // Messages are requested one at a time while less than 100 bytes are buffered.
+        flow.received(60);
+
+        verify(call, times(2)).request(1);
+
+        flow.received(60);
+
+        verify(call, times(2)).request(1);
+
+        // 60 bytes are still buffered, which is below the limit.
+        flow.consumed(60);
+
+        verify(call, times(3)).request(1);
+    }
+
+    @Test
+    public void testPrefetchCountAndBytes() {
+        ClientCallStreamObserver<Api.SubscribeRequest> call = mockCall();
+        FlowController flow = FlowController.create(
+                new SubscriptionOptions().setPrefetchCount(10).setPrefetchBytes(100));
+        flow.start(call);
+        flow.handshake();
+
+        verify(call).request(10);
+
+        for (int i = 0; i < 10; i++) {
+            flow.received(50);
+        }
+        // 450 bytes are still buffered, so nothing is requested.
+        flow.consumed(50);
+
+        verify(call, times(1)).request(anyInt());
+
+        for (int i = 0; i < 8; i++) {
+            flow.consumed(50);
+        }
+
+        verify(call).request(9);
+    }
+
+    @Test
+    public void testDemand() {
+        ClientCallStreamObserver<Api.SubscribeRequest> call = mockCall();
+        DemandFlowController flow = new DemandFlowController();
+        flow.start(call);
+
+        verify(call).disableAutoInboundFlowControl();
+
+        // Demand signalled before the handshake is requested once the subscription is created.
+        flow.request(5);
+        flow.handshake();
+
+        verify(call).request(5);
+
+        for (int i = 0; i < 5; i++) {
+            flow.received(10);
+            flow.consumed(10);
+        }
+        flow.request(2);
+        flow.request(3);
+
+        verify(call).request(2);
+        verify(call).request(3);
+        verifyNoMoreInteractions(call);
+    }
+
+    @Test
+    public void testDemandCarriedOver() {
+        ClientCallStreamObserver<Api.SubscribeRequest> call = mockCall();
+        DemandFlowController flow = new DemandFlowController();
+        flow.start(call);
+        flow.handshake();
+        flow.request(10);
+        flow.received(10);
+        flow.received(10);
+
+        // The remaining 8 messages are requested again from the stream opened when resubscribing.
+        ClientCallStreamObserver<Api.SubscribeRequest> resubscribed = mockCall();
+        flow.start(resubscribed);
+        flow.handshake();
+
+        verify(resubscribed).request(8);
+    }
+
+    @Test
+    public void testDemandUnbounded() {
+        ClientCallStreamObserver<Api.SubscribeRequest> call = mockCall();
+        DemandFlowController flow = new DemandFlowController();
+        flow.start(call);
+        flow.handshake();
+        flow.request(Long.MAX_VALUE);
+        flow.request(Long.MAX_VALUE);
+
+        verify(call).disableAutoInboundFlowControl();
+        verify(call).request(Integer.MAX_VALUE);
+
+        // Outstanding requests are only topped up once half of them have arrived.
+        flow.received(10);
+
+        verifyNoMoreInteractions(call);
+    }
+
+}
@@ -0,0 +1,91 @@
+package io.liftbridge;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+
+public class HashedWheelTimerTest {
+
+    @Test
+    public void testTimeoutFires() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, MILLISECONDS, 8);
+        CountDownLatch fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        timer.newTimeout(timeout -> fired.countDown(), 50, MILLISECONDS);
+
+        assertTrue(fired.await(1, SECONDS));
+        assertTrue("Fired after the delay", System.nanoTime() - start >= MILLISECONDS.toNanos(50));
+        timer.stop();
+    }
+
+    @Test
+    public void testTimeoutFiresAfterSeveralRounds() throws InterruptedException {
+        // 4 buckets of 10ms each, so a 100ms delay wraps around the wheel twice.
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, MILLISECONDS, 4);
+        CountDownLatch fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        timer.newTimeout(timeout -> fired.countDown(), 100, MILLISECONDS);
+
+        assertTrue(fired.await(1, SECONDS));
+        assertTrue("Fired after the delay", System.nanoTime() - start >= MILLISECONDS.toNanos(100));
+        timer.stop();
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, MILLISECONDS, 8);
+        AtomicInteger fired = new AtomicInteger();
+
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(t -> fired.incrementAndGet(), 30, MILLISECONDS);
+        assertTrue(timeout.cancel());
+        assertFalse("Already cancelled", timeout.cancel());
+
+        Thread.sleep(100);
+        assertEquals(0, fired.get());
+        timer.stop();
+    }
+
+    @Test
+    public void testManyTimeoutsShareOneThread() {
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer-shared", 10, MILLISECONDS, 8);
+        AtomicInteger fired = new AtomicInteger();
+        List<HashedWheelTimer.Timeout> timeouts = new ArrayList<>();
+
+        for (int i = 0; i < 10_000; i++) {
+            timeouts.add(timer.newTimeout(t -> fired.incrementAndGet(), i % 50, MILLISECONDS));
+        }
+        int cancelled = 0;
+        for (int i = 0; i < timeouts.size(); i += 2) {
+            if (timeouts.get(i).cancel()) {
+                cancelled++;
+            }
+        }
+
+        int expected = timeouts.size() - cancelled;
+        await().atMost(5, SECONDS).until(() -> fired.get() == expected);
+        long timerThreads = Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("test-timer-shared"))
+                .count();
+        assertEquals(1, timerThreads);
+        timer.stop();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNewTimeoutAfterStop() {
+        HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, MILLISECONDS, 8);
+        timer.stop();
+        timer.newTimeout(timeout -> {
+        }, 10, MILLISECONDS);
+    }
+
+}
@@ -0,0 +1,42 @@
+package io.liftbridge;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class KeyHashPartitionerTest extends BasePartitionerTest {
+
+    @Test
+    public void testHash() {
+        // Reference values for 32-bit FNV-1a.
+        assertEquals(0x811c9dc5, KeyHashPartitioner.hash(null));
+        assertEquals(0x811c9dc5, KeyHashPartitioner.hash(new byte[0]));
+        assertEquals(0xe40c292c, KeyHashPartitioner.hash("a".getBytes()));
+        assertEquals(0xbf9cf968, KeyHashPartitioner.hash("foobar".getBytes()));
+    }
+
+    @Test
+    public void testPartition() {
+        KeyHashPartitioner partitioner = new KeyHashPartitioner();
+        Metadata metadata = metadataWithPartitions("foo", 32);
+        MessageOptions opts = new MessageOptions();
+
+        assertEquals(8, partitioner.partition("foo", "foobar".getBytes(), null, metadata, opts));
+        assertEquals(12, partitioner.partition("foo", "a".getBytes(), null, metadata, opts));
+        assertEquals(6, partitioner.partition("foo", "key-1".getBytes(), null, metadata, opts));
+        assertEquals(19, partitioner.partition("foo", "key-2".getBytes(), null, metadata, opts));
+        assertEquals(5, partitioner.partition("foo", null, null, metadata, opts));
+    }
+
+    @Test
+    public void testPartitionUnknownStream() {
+        KeyHashPartitioner partitioner = new KeyHashPartitioner();
+        Metadata metadata = metadataWithPartitions("foo", 32);
+        MessageOptions opts = new MessageOptions();
+
+        assertEquals(0, partitioner.partition("bar", "foobar".getBytes(), null, metadata, opts));
+        assertEquals(0, partitioner.partition("foo", "foobar".getBytes(), null, null, opts));
+        assertEquals(0, partitioner.partition("foo", "foobar".getBytes(), null, opts));
+    }
+
+}
@@ -0,0 +1,207 @@
+package io.liftbridge;
+
+import com.google.protobuf.ByteString;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.liftbridge.proto.Api;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class KeyOrderedDispatcherTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private static Message message(int partition, long offset, String key) {
+        return Message.fromProto(Api.Message.newBuilder()
+                .setPartition(partition)
+                .setOffset(offset)
+                .setKey(ByteString.copyFromUtf8(key))
+                .build());
+    }
+
+    @Test
+    public void testKeyOrder() {
+        Map<String, List<Long>> byKey = new ConcurrentHashMap<>();
+        AtomicInteger handled = new AtomicInteger();
+        KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher(new MessageHandler() {
+            @Override
+            public void onMessage(Message msg) {
+                byKey.computeIfAbsent(new String(msg.getKey()), k -> Collections.synchronizedList(new ArrayList<>()))
+                        .add(msg.getOffset());
+                handled.incrementAndGet();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+        }, new ParallelOptions().setExecutor(executor).setKeyLanes(16), "foo", null);
+
+        for (long offset = 0; offset < 10_000; offset++) {
+            dispatcher.onMessage(message(0, offset, "key-" + offset % 50));
+        }
+
+        await().atMost(5, SECONDS).until(() -> handled.get() == 10_000);
+        assertEquals(50, byKey.size());
+        for (List<Long> offsets : byKey.values()) {
+            for (int i = 1; i < offsets.size(); i++) {
+                assertTrue(offsets.get(i - 1) < offsets.get(i));
+            }
+        }
+        assertEquals(9_999, dispatcher.getCompletedOffset(0));
+        assertEquals(-1, dispatcher.getCompletedOffset(1));
+    }
+
+    @Test
+    public void testConcurrentKeys() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        AtomicInteger handled = new AtomicInteger();
+        KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher(new MessageHandler() {
+            @Override
+            public void onMessage(Message msg) {
+                if (msg.getOffset() == 0) {
+                    try {
+                        blocked.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                handled.incrementAndGet();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+        }, new ParallelOptions().setExecutor(executor), "foo", null);
+
+        // The first key blocks its lane, which doesn't hold up the second key.
+        dispatcher.onMessage(message(0, 0, "a"));
+        dispatcher.onMessage(message(0, 1, "b"));
+        dispatcher.onMessage(message(0, 2, "a"));
+
+        await().atMost(5, SECONDS).until(() -> handled.get() == 1);
+        assertEquals(-1, dispatcher.getCompletedOffset(0));
+
+        blocked.countDown();
+        await().atMost(5, SECONDS).until(() -> dispatcher.getCompletedOffset(0) == 2);
+        assertEquals(3, handled.get());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ClientCallStreamObserver<Api.SubscribeRequest> mockCall() {
+        return mock(ClientCallStreamObserver.class);
+    }
+
+    @Test
+    public void testMaxInFlight() {
+        CountDownLatch blocked = new CountDownLatch(1);
+        KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher(new MessageHandler() {
+            @Override
+            public void onMessage(Message msg) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+        }, new ParallelOptions().setExecutor(executor).setMaxInFlight(2), "foo", null);
+        FlowController flow = dispatcher.flowController(0);
+        ClientCallStreamObserver<Api.SubscribeRequest> call = mockCall();
+        flow.start(call);
+        verify(call).disableAutoInboundFlowControl();
+
+        flow.handshake();
+        verify(call).request(1);
+
+        flow.received(10);
+        dispatcher.onMessage(message(0, 0, "a"));
+        verify(call, times(2)).request(1);
+
+        // The second message fills the window, so no more are requested and the caller isn't held up.
+        flow.received(10);
+        dispatcher.onMessage(message(0, 1, "b"));
+        verifyNoMoreInteractions(call);
+
+        // A stream replacing the first one doesn't request anything while the partition is paused.
+        ClientCallStreamObserver<Api.SubscribeRequest> moved = mockCall();
+        flow.start(moved);
+        flow.handshake();
+        verify(moved).disableAutoInboundFlowControl();
+        verifyNoMoreInteractions(moved);
+
+        // Completing a message resumes the partition, once.
+        blocked.countDown();
+        verify(moved, timeout(5000)).request(1);
+        await().atMost(5, SECONDS).until(() -> dispatcher.getCompletedOffset(0) == 1);
+        verify(moved).request(1);
+        verifyNoMoreInteractions(call);
+    }
+
+    @Test
+    public void testPausedPartitionsResume() {
+        CountDownLatch blocked = new CountDownLatch(1);
+        KeyOrderedDispatcher dispatcher = new KeyOrderedDispatcher(new MessageHandler() {
+            @Override
+            public void onMessage(Message msg) {
+                if (msg.getPartition() == 0) {
+                    try {
+                        blocked.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+        }, new ParallelOptions().setExecutor(executor).setMaxInFlight(1), "foo", null);
+        FlowController flow0 = dispatcher.flowController(0);
+        FlowController flow1 = dispatcher.flowController(1);
+        ClientCallStreamObserver<Api.SubscribeRequest> call0 = mockCall();
+        ClientCallStreamObserver<Api.SubscribeRequest> call1 = mockCall();
+        flow0.start(call0);
+        flow1.start(call1);
+        flow0.handshake();
+        flow1.handshake();
+        verify(call0).request(1);
+        verify(call1).request(1);
+
+        // Both partitions deliver the message they had requested, pausing them.
+        flow0.received(10);
+        dispatcher.onMessage(message(0, 0, "a"));
+        flow1.received(10);
+        dispatcher.onMessage(message(1, 0, "b"));
+        await().atMost(5, SECONDS).until(() -> dispatcher.getCompletedOffset(1) == 0);
+        verify(call0).request(1);
+        verify(call1).request(1);
+
+        // Once there is room, every paused partition resumes, not just one which may have nothing more to read.
+        blocked.countDown();
+        verify(call0, timeout(5000).times(2)).request(1);
+        verify(call1, timeout(5000).times(2)).request(1);
+    }
+
+}
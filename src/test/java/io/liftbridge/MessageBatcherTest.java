@@ -0,0 +1,191 @@
+package io.liftbridge;
+
+import com.google.protobuf.ByteString;
+import io.liftbridge.proto.Api;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class MessageBatcherTest {
+
+    private HashedWheelTimer timer;
+    private final List<List<Long>> batches = Collections.synchronizedList(new ArrayList<>());
+    private final List<List<Message>> lists = Collections.synchronizedList(new ArrayList<>());
+    private final List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+
+    private final BatchMessageHandler handler = new BatchMessageHandler() {
+        @Override
+        public void onMessages(List<Message> msgs) {
+            List<Long> offsets = new ArrayList<>();
+            for (Message msg : msgs) {
+                offsets.add(msg.getOffset());
+            }
+            batches.add(offsets);
+            lists.add(msgs);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            errors.add(t);
+        }
+    };
+
+    @Before
+    public void setupTimer() {
+        timer = new HashedWheelTimer("test-timer", 10, MILLISECONDS, 8);
+    }
+
+    @After
+    public void tearDownTimer() {
+        timer.stop();
+    }
+
+    private static Message message(long offset, int size) {
+        return Message.fromProto(Api.Message.newBuilder()
+                .setOffset(offset)
+                .setValue(ByteString.copyFrom(new byte[size]))
+                .build());
+    }
+
+    @Test
+    public void testMaxMessages() {
+        BatchOptions opts = new BatchOptions().setMaxMessages(2).setMaxWait(1, SECONDS);
+        MessageBatcher batcher = new MessageBatcher(handler, opts, timer, Runnable::run, null);
+
+        for (int i = 0; i < 5; i++) {
+            batcher.onMessage(message(i, 1));
+        }
+
+        assertEquals(2, batches.size());
+        assertEquals(Arrays.asList(0L, 1L), batches.get(0));
+        assertEquals(Arrays.asList(2L, 3L), batches.get(1));
+        assertSame("The list is reused", lists.get(0), lists.get(1));
+    }
+
+    @Test
+    public void testMaxBytes() {
+        BatchOptions opts = new BatchOptions().setMaxBytes(100).setMaxWait(1, SECONDS);
+        MessageBatcher batcher = new MessageBatcher(handler, opts, timer, Runnable::run, null);
+
+        batcher.onMessage(message(0, 60));
+        batcher.onMessage(message(1, 60));
+        batcher.onMessage(message(2, 200));
+
+        assertEquals(2, batches.size());
+        assertEquals(Arrays.asList(0L, 1L), batches.get(0));
+        assertEquals(Collections.singletonList(2L), batches.get(1));
+    }
+
+    @Test
+    public void testMaxWait() {
+        BatchOptions opts = new BatchOptions().setMaxWait(20, MILLISECONDS);
+        MessageBatcher batcher = new MessageBatcher(handler, opts, timer, Runnable::run, null);
+
+        batcher.onMessage(message(0, 1));
+        batcher.onMessage(message(1, 1));
+
+        assertTrue(batches.isEmpty());
+        await().atMost(1, SECONDS).until(() -> batches.size() == 1);
+        assertEquals(Arrays.asList(0L, 1L), batches.get(0));
+
+        batcher.onMessage(message(2, 1));
+
+        await().atMost(1, SECONDS).until(() -> batches.size() == 2);
+        assertEquals(Collections.singletonList(2L), batches.get(1));
+    }
+
+    @Test
+    public void testNoWait() {
+        BatchOptions opts = new BatchOptions().setMaxWait(0, MILLISECONDS);
+        MessageBatcher batcher = new MessageBatcher(handler, opts, timer, Runnable::run, null);
+
+        batcher.onMessage(message(0, 1));
+
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    public void testStoppedTimer() {
+        BatchOptions opts = new BatchOptions().setMaxWait(1, SECONDS);
+        MessageBatcher batcher = new MessageBatcher(handler, opts, timer, Runnable::run, null);
+
+        // A batch waiting for a timeout which the stopped timer dropped is handed over with the next message.
+        batcher.onMessage(message(0, 1));
+        timer.stop();
+        batcher.onMessage(message(1, 1));
+        assertEquals(1, batches.size());
+        assertEquals(Arrays.asList(0L, 1L), batches.get(0));
+
+        // Without a timer to close it later, every batch is handed over right away.
+        batcher.onMessage(message(2, 1));
+        assertEquals(2, batches.size());
+        assertEquals(Collections.singletonList(2L), batches.get(1));
+    }
+
+    @Test
+    public void testErrorFlushesBatch() {
+        BatchOptions opts = new BatchOptions().setMaxWait(1, SECONDS);
+        MessageBatcher batcher = new MessageBatcher(handler, opts, timer, Runnable::run, null);
+        Exception error = new Exception("stream failed");
+
+        batcher.onMessage(message(0, 1));
+        batcher.onError(error);
+
+        assertEquals(1, batches.size());
+        assertEquals(Collections.singletonList(error), errors);
+    }
+
+    @Test
+    public void testFlowCreditAfterHandOver() {
+        FlowController flow = mock(FlowController.class);
+        BatchOptions opts = new BatchOptions().setMaxMessages(3).setMaxWait(1, SECONDS);
+        MessageBatcher batcher = new MessageBatcher(new BatchMessageHandler() {
+            @Override
+            public void onMessages(List<Message> msgs) {
+                // Messages in the batch being handed over are still counted against the window.
+                verify(flow, never()).consumed(anyInt());
+                handler.onMessages(msgs);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+        }, opts, timer, Runnable::run, flow);
+        FlowController subscriptionFlow = batcher.flowController();
+
+        // The subscription's flow controller passes everything on but the handler being done with a message.
+        subscriptionFlow.received(10);
+        verify(flow).received(10);
+        subscriptionFlow.consumed(10);
+        verify(flow, never()).consumed(anyInt());
+
+        Message msg = message(0, 1);
+        batcher.onMessage(msg);
+        batcher.onMessage(message(1, 1));
+        verify(flow, never()).consumed(anyInt());
+
+        batcher.onMessage(message(2, 1));
+        assertEquals(1, batches.size());
+        verify(flow, times(3)).consumed(anyInt());
+        verify(flow).consumed(msg.getSerializedSize());
+    }
+
+    @Test
+    public void testNoFlowController() {
+        MessageBatcher batcher = new MessageBatcher(handler, new BatchOptions(), timer, Runnable::run, null);
+
+        assertNull(batcher.flowController());
+    }
+
+}
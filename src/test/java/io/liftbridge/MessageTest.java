@@ -0,0 +1,90 @@
+package io.liftbridge;
+
+import com.google.protobuf.ByteString;
+import io.liftbridge.proto.Api;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class MessageTest {
+
+    private static final long TIMESTAMP_NANOS = 1_585_000_000_123_456_789L;
+
+    private static Api.Message wireMessage() {
+        return Api.Message.newBuilder()
+                .setOffset(42)
+                .setKey(ByteString.copyFromUtf8("key"))
+                .setValue(ByteString.copyFromUtf8("value"))
+                .setTimestamp(TIMESTAMP_NANOS)
+                .setStream("foo")
+                .setPartition(3)
+                .setSubject("foo.3")
+                .setReplySubject("reply")
+                .putHeaders("header", ByteString.copyFromUtf8("bar"))
+                .build();
+    }
+
+    @Test
+    public void testFromProto() {
+        Message msg = Message.fromProto(wireMessage());
+
+        assertEquals(42, msg.getOffset());
+        assertArrayEquals("key".getBytes(), msg.getKey());
+        assertArrayEquals("value".getBytes(), msg.getValue());
+        assertEquals(5, msg.getValueSize());
+        assertEquals(TIMESTAMP_NANOS, msg.getTimestampNanos());
+        assertEquals(Instant.ofEpochSecond(1_585_000_000L, 123_456_789L), msg.getTimestamp());
+        assertEquals("foo", msg.getStream());
+        assertEquals(3, msg.getPartition());
+        assertEquals("foo.3", msg.getSubject());
+        assertEquals("reply", msg.getReplySubject());
+        assertEquals(1, msg.getHeaders().size());
+        assertArrayEquals("bar".getBytes(), msg.getHeaders().get("header"));
+    }
+
+    @Test
+    public void testBuffers() {
+        Message msg = Message.fromProto(wireMessage());
+
+        ByteBuffer value = msg.getValueBuffer();
+        byte[] valueBytes = new byte[value.remaining()];
+        value.get(valueBytes);
+        ByteBuffer key = msg.getKeyBuffer();
+        byte[] keyBytes = new byte[key.remaining()];
+        key.get(keyBytes);
+
+        assertTrue(msg.getValueBuffer().isReadOnly());
+        assertArrayEquals("value".getBytes(), valueBytes);
+        assertArrayEquals("key".getBytes(), keyBytes);
+    }
+
+    @Test
+    public void testMaterializedOnce() {
+        Message msg = Message.fromProto(wireMessage());
+
+        assertSame(msg.getValue(), msg.getValue());
+        assertSame(msg.getKey(), msg.getKey());
+        assertSame(msg.getHeaders(), msg.getHeaders());
+    }
+
+    @Test
+    public void testEmptyMessage() {
+        Message msg = Message.fromProto(Api.Message.getDefaultInstance());
+
+        assertEquals(0, msg.getKey().length);
+        assertEquals(0, msg.getValue().length);
+        assertEquals(0, msg.getValueBuffer().remaining());
+        assertTrue(msg.getHeaders().isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testHeadersUnmodifiable() {
+        Map<String, byte[]> headers = Message.fromProto(wireMessage()).getHeaders();
+        headers.put("other", new byte[0]);
+    }
+
+}
@@ -0,0 +1,226 @@
+package io.liftbridge;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.liftbridge.proto.Api;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class MetadataCacheTest {
+
+    private static Api.FetchMetadataResponse response(String leader) {
+        return Api.FetchMetadataResponse.newBuilder()
+                .addBrokers(Api.Broker.newBuilder().setId("a").setHost("localhost").setPort(9292))
+                .addBrokers(Api.Broker.newBuilder().setId("b").setHost("localhost").setPort(9293))
+                .addMetadata(streamMetadata("foo", leader))
+                .build();
+    }
+
+    private static Api.StreamMetadata streamMetadata(String name, String leader) {
+        return Api.StreamMetadata.newBuilder()
+                .setName(name)
+                .setSubject(name)
+                .putPartitions(0, Api.PartitionMetadata.newBuilder()
+                        .setId(0)
+                        .setLeader(leader)
+                        .addReplicas("a")
+                        .addReplicas("b")
+                        .addIsr(leader)
+                        .build())
+                .build();
+    }
+
+    @Test
+    public void testConcurrentUpdatesShareFetch() throws InterruptedException {
+        AtomicInteger fetches = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        MetadataCache cache = new MetadataCache(Collections.singleton("localhost:9292"), rpc -> {
+            fetches.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return response("a");
+        });
+
+        List<CompletableFuture<Metadata>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(cache.updateAsync());
+        }
+        release.countDown();
+
+        for (CompletableFuture<Metadata> future : futures) {
+            assertSame(futures.get(0).join(), future.join());
+        }
+        assertEquals(1, fetches.get());
+        assertEquals("localhost:9292", cache.getAddr("foo", 0, false));
+
+        // A refresh requested after the fetch completed fetches again.
+        cache.update();
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void testUpdateError() {
+        AtomicInteger fetches = new AtomicInteger();
+        MetadataCache cache = new MetadataCache(Collections.singleton("localhost:9292"), rpc -> {
+            if (fetches.incrementAndGet() == 1) {
+                throw new StatusRuntimeException(Status.UNAVAILABLE);
+            }
+            return response("b");
+        });
+
+        try {
+            cache.update();
+            fail("Expected StatusRuntimeException");
+        } catch (StatusRuntimeException e) {
+            assertEquals(Status.Code.UNAVAILABLE, e.getStatus().getCode());
+        }
+
+        // The failed fetch is not shared with later refreshes.
+        cache.update();
+        assertEquals("localhost:9293", cache.getAddr("foo", 0, false));
+    }
+
+    @Test
+    public void testUpdateStream() {
+        ManagedAPIClient client = mock(ManagedAPIClient.class);
+        when(client.fetchMetadata(eq(Collections.emptyList()), anyLong(), any())).thenReturn(response("a")
+                .toBuilder()
+                .addMetadata(streamMetadata("bar", "a"))
+                .build());
+        MetadataCache cache = new MetadataCache(Collections.singleton("localhost:9292"), rpc -> rpc.execute(client));
+        Metadata metadata = cache.update();
+        StreamInfo foo = metadata.getStream("foo");
+        StreamInfo bar = metadata.getStream("bar");
+
+        // Only the requested stream is fetched, and the others are kept as they are.
+        when(client.fetchMetadata(eq(Collections.singletonList("foo")), anyLong(), any())).thenReturn(response("b"));
+        metadata = cache.update("foo");
+        verify(client).fetchMetadata(eq(Collections.singletonList("foo")), anyLong(), any());
+        assertNotSame(foo, metadata.getStream("foo"));
+        assertSame(bar, metadata.getStream("bar"));
+        assertEquals("localhost:9293", cache.getAddr("foo", 0, false));
+        assertEquals("localhost:9292", cache.getAddr("bar", 0, false));
+        foo = metadata.getStream("foo");
+
+        // A stream the cluster doesn't know anymore is dropped.
+        when(client.fetchMetadata(eq(Collections.singletonList("bar")), anyLong(), any())).thenReturn(response("b")
+                .toBuilder()
+                .clearMetadata()
+                .addMetadata(Api.StreamMetadata.newBuilder()
+                        .setName("bar")
+                        .setError(Api.StreamMetadata.Error.UNKNOWN_STREAM))
+                .build());
+        metadata = cache.update("bar");
+        assertNull(metadata.getStream("bar"));
+        assertNull(cache.getAddr("bar", 0, false));
+        assertSame(foo, metadata.getStream("foo"));
+
+        // A full refresh reuses the streams which didn't change.
+        when(client.fetchMetadata(eq(Collections.emptyList()), anyLong(), any())).thenReturn(response("b"));
+        metadata = cache.update();
+        assertSame(foo, metadata.getStream("foo"));
+        assertEquals(1, metadata.getStreams().size());
+    }
+
+    @Test
+    public void testUpdateStreamMovedBroker() {
+        ManagedAPIClient client = mock(ManagedAPIClient.class);
+        when(client.fetchMetadata(eq(Collections.emptyList()), anyLong(), any())).thenReturn(response("a")
+                .toBuilder()
+                .addMetadata(streamMetadata("bar", "a"))
+                .build());
+        MetadataCache cache = new MetadataCache(Collections.singleton("localhost:9292"), rpc -> rpc.execute(client));
+        cache.update();
+
+        // Broker a moved, which a fetch of foo alone also shows, so bar has to follow it although it wasn't fetched.
+        when(client.fetchMetadata(eq(Collections.singletonList("foo")), anyLong(), any())).thenReturn(response("a")
+                .toBuilder()
+                .setBrokers(0, Api.Broker.newBuilder().setId("a").setHost("localhost").setPort(9294))
+                .build());
+        Metadata metadata = cache.update("foo");
+        assertEquals("localhost:9294", cache.getAddr("foo", 0, false));
+        assertEquals("localhost:9294", cache.getAddr("bar", 0, false));
+        assertSame(metadata.getBroker("a"), metadata.getStream("bar").getPartition(0).getLeader());
+        assertTrue(metadata.getStream("bar").getPartition(0).getReplicas().contains(metadata.getBroker("a")));
+        StreamInfo bar = metadata.getStream("bar");
+
+        // Brokers which didn't move leave the kept streams as they are.
+        metadata = cache.update("foo");
+        assertSame(bar, metadata.getStream("bar"));
+
+        // A broker which is gone is dropped from the kept streams too.
+        BrokerInfo b = metadata.getBroker("b");
+        when(client.fetchMetadata(eq(Collections.singletonList("foo")), anyLong(), any())).thenReturn(response("a")
+                .toBuilder()
+                .setBrokers(0, Api.Broker.newBuilder().setId("a").setHost("localhost").setPort(9294))
+                .removeBrokers(1)
+                .build());
+        metadata = cache.update("foo");
+        assertNotSame(bar, metadata.getStream("bar"));
+        assertFalse(metadata.getStream("bar").getPartition(0).getReplicas().contains(b));
+        assertSame(metadata.getBroker("a"), metadata.getStream("bar").getPartition(0).getLeader());
+    }
+
+    @Test
+    public void testListener() {
+        AtomicInteger fetches = new AtomicInteger();
+        List<MetadataDiff> diffs = new ArrayList<>();
+        MetadataCache cache = new MetadataCache(Collections.singleton("localhost:9292"),
+                rpc -> response(fetches.incrementAndGet() < 3 ? "a" : "b"), diffs::add);
+
+        cache.update();
+        assertEquals(1, diffs.size());
+        assertEquals(1, diffs.get(0).getAddedPartitions().size());
+
+        // Nothing changed.
+        cache.update();
+        assertEquals(1, diffs.size());
+
+        Metadata metadata = cache.update();
+        assertEquals(2, diffs.size());
+        MetadataDiff diff = diffs.get(1);
+        assertSame(metadata, diff.getCurrent());
+        assertEquals(1, diff.getLeaderChanges().size());
+        assertEquals(1, diff.getIsrChanges().size());
+        assertEquals("b", diff.getLeaderChanges().get(0).getCurrent().getLeader().getId());
+    }
+
+    @Test
+    public void testFetchThreadAndDeadline() {
+        ManagedAPIClient client = mock(ManagedAPIClient.class);
+        List<String> threads = new ArrayList<>();
+        when(client.fetchMetadata(any(), anyLong(), any())).thenAnswer(invocation -> {
+            threads.add(Thread.currentThread().getName());
+            return response("a");
+        });
+        MetadataCache cache = new MetadataCache(Collections.singleton("localhost:9292"), rpc -> rpc.execute(client));
+
+        cache.update();
+        cache.update("foo");
+        assertEquals(Arrays.asList("liftbridge-metadata-fetch", "liftbridge-metadata-fetch"), threads);
+        verify(client, times(2)).fetchMetadata(any(), longThat(timeout -> timeout > 0), eq(TimeUnit.MILLISECONDS));
+
+        cache.close();
+        try {
+            cache.update();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Closed.
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+package io.liftbridge;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class MetadataDiffTest {
+
+    private final BrokerInfo a = new BrokerInfo("a", "localhost", 9292);
+    private final BrokerInfo b = new BrokerInfo("b", "localhost", 9293);
+
+    private static Map<String, BrokerInfo> brokers(BrokerInfo... brokers) {
+        Map<String, BrokerInfo> map = new HashMap<>();
+        for (BrokerInfo broker : brokers) {
+            map.put(broker.getId(), broker);
+        }
+        return map;
+    }
+
+    private PartitionInfo partition(int id, BrokerInfo leader, BrokerInfo... isr) {
+        return new PartitionInfo(id, leader, new HashSet<>(Arrays.asList(a, b)), new HashSet<>(Arrays.asList(isr)));
+    }
+
+    private static StreamInfo stream(String name, PartitionInfo... partitions) {
+        Map<Integer, PartitionInfo> map = new HashMap<>();
+        for (PartitionInfo partition : partitions) {
+            map.put(partition.getId(), partition);
+        }
+        return new StreamInfo(name, name, map);
+    }
+
+    private static Metadata metadata(Map<String, BrokerInfo> brokers, StreamInfo... streams) {
+        Map<String, StreamInfo> map = new HashMap<>();
+        for (StreamInfo stream : streams) {
+            map.put(stream.getName(), stream);
+        }
+        return new Metadata(brokers, map);
+    }
+
+    @Test
+    public void testCompute() {
+        StreamInfo bar = stream("bar", partition(0, a, a));
+        Metadata previous = metadata(brokers(a, b),
+                stream("foo", partition(0, a, a, b), partition(1, a, a, b)),
+                bar,
+                stream("baz", partition(0, b, b)));
+        Metadata current = metadata(brokers(a, b),
+                stream("foo", partition(0, b, a, b), partition(1, a, a), partition(2, b, b)),
+                bar,
+                stream("qux", partition(0, a, a)));
+
+        MetadataDiff diff = MetadataDiff.compute(previous, current);
+        assertFalse(diff.isEmpty());
+        assertSame(previous, diff.getPrevious());
+        assertSame(current, diff.getCurrent());
+
+        assertEquals(1, diff.getLeaderChanges().size());
+        MetadataDiff.PartitionChange leaderChange = diff.getLeaderChanges().get(0);
+        assertEquals("foo", leaderChange.getStream());
+        assertEquals(0, leaderChange.getPartitionId());
+        assertSame(a, leaderChange.getPrevious().getLeader());
+        assertSame(b, leaderChange.getCurrent().getLeader());
+
+        assertEquals(1, diff.getIsrChanges().size());
+        assertEquals("foo", diff.getIsrChanges().get(0).getStream());
+        assertEquals(1, diff.getIsrChanges().get(0).getPartitionId());
+
+        assertEquals(2, diff.getAddedPartitions().size());
+        for (MetadataDiff.PartitionChange added : diff.getAddedPartitions()) {
+            assertNull(added.getPrevious());
+            assertTrue(added.getStream().equals("foo") && added.getPartitionId() == 2
+                    || added.getStream().equals("qux") && added.getPartitionId() == 0);
+        }
+
+        assertEquals(1, diff.getRemovedStreams().size());
+        assertEquals("baz", diff.getRemovedStreams().get(0).getName());
+    }
+
+    @Test
+    public void testComputeUnchanged() {
+        Metadata previous = metadata(brokers(a, b), stream("foo", partition(0, a, a, b)));
+        // Equal contents in new objects, with a broker which reconnected under the same address.
+        BrokerInfo a2 = new BrokerInfo("a", "localhost", 9292);
+        Metadata current = metadata(brokers(a2, b), stream("foo", new PartitionInfo(0, a2,
+                new HashSet<>(Arrays.asList(a2, b)), new HashSet<>(Arrays.asList(a2, b)))));
+
+        assertTrue(MetadataDiff.compute(previous, current).isEmpty());
+        assertTrue(MetadataDiff.compute(current, current).isEmpty());
+        assertTrue(MetadataDiff.compute(new Metadata(), new Metadata(Collections.emptyMap(),
+                Collections.emptyMap())).isEmpty());
+    }
+
+    @Test
+    public void testComputeMovedBroker() {
+        Metadata previous = metadata(brokers(a, b), stream("foo", partition(0, a, a)));
+        BrokerInfo moved = new BrokerInfo("a", "otherhost", 9292);
+        Metadata current = metadata(brokers(moved, b), stream("foo", new PartitionInfo(0, moved,
+                new HashSet<>(Arrays.asList(moved, b)), new HashSet<>(Collections.singletonList(moved)))));
+
+        MetadataDiff diff = MetadataDiff.compute(previous, current);
+        assertEquals(1, diff.getLeaderChanges().size());
+        assertEquals(1, diff.getIsrChanges().size());
+    }
+
+}
@@ -0,0 +1,116 @@
+package io.liftbridge;
+
+import io.liftbridge.proto.Api;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+
+public class MetadataSnapshotTest {
+
+    private static final Set<String> ADDRS = Collections.singleton("localhost:9292");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Api.FetchMetadataResponse response() {
+        return Api.FetchMetadataResponse.newBuilder()
+                .addBrokers(Api.Broker.newBuilder().setId("a").setHost("localhost").setPort(9292))
+                .addBrokers(Api.Broker.newBuilder().setId("b").setHost("localhost").setPort(9293))
+                .addMetadata(Api.StreamMetadata.newBuilder()
+                        .setName("foo")
+                        .setSubject("foo-subject")
+                        .putPartitions(0, Api.PartitionMetadata.newBuilder()
+                                .setId(0)
+                                .setLeader("a")
+                                .addReplicas("a")
+                                .addReplicas("b")
+                                .addIsr("a")
+                                .addIsr("b")
+                                .build())
+                        .putPartitions(1, Api.PartitionMetadata.newBuilder()
+                                .setId(1)
+                                .setLeader("b")
+                                .addReplicas("b")
+                                .addIsr("b")
+                                .build()))
+                .build();
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        Path path = folder.getRoot().toPath().resolve("metadata");
+        MetadataSnapshot snapshot = new MetadataSnapshot(path, ADDRS);
+        assertNull(snapshot.load());
+
+        Metadata metadata = MetadataCache.merge(new Metadata(), response(), Collections.emptyList());
+        snapshot.save(metadata);
+        await().until(() -> Files.exists(path));
+        snapshot.close();
+
+        Metadata loaded = new MetadataSnapshot(path, ADDRS).load();
+        assertNotNull(loaded);
+        assertEquals(metadata.getLastUpdated().toEpochMilli(), loaded.getLastUpdated().toEpochMilli());
+        assertEquals(metadata.getAddrs(), loaded.getAddrs());
+        StreamInfo foo = loaded.getStream("foo");
+        assertEquals("foo-subject", foo.getSubject());
+        assertEquals(2, foo.getPartitionCount());
+        assertEquals("a", foo.getPartition(0).getLeader().getId());
+        assertEquals(2, foo.getPartition(0).getReplicas().size());
+        assertEquals(2, foo.getPartition(0).getISR().size());
+        assertEquals("b", foo.getPartition(1).getLeader().getId());
+        assertEquals(1, foo.getPartition(1).getISR().size());
+    }
+
+    @Test
+    public void testLoadOtherBrokers() {
+        Path path = folder.getRoot().toPath().resolve("metadata");
+        MetadataSnapshot snapshot = new MetadataSnapshot(path, ADDRS);
+        snapshot.save(MetadataCache.merge(new Metadata(), response(), Collections.emptyList()));
+        await().until(() -> Files.exists(path));
+        snapshot.close();
+
+        assertNull(new MetadataSnapshot(path, Collections.singleton("otherhost:9292")).load());
+        assertNull(new MetadataSnapshot(path, new HashSet<>(Arrays.asList("localhost:9292", "localhost:9293")))
+                .load());
+        assertNotNull(new MetadataSnapshot(path, new HashSet<>(ADDRS)).load());
+    }
+
+    @Test
+    public void testLoadCorrupt() throws IOException {
+        Path path = folder.newFile("metadata").toPath();
+        assertNull(new MetadataSnapshot(path, ADDRS).load());
+
+        Files.write(path, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+        assertNull(new MetadataSnapshot(path, ADDRS).load());
+    }
+
+    @Test
+    public void testCacheSavesChanges() {
+        Path path = folder.getRoot().toPath().resolve("metadata");
+        MetadataCache cache = new MetadataCache(ADDRS, rpc -> response(),
+                diff -> {
+                }, new MetadataSnapshot(path, ADDRS));
+        cache.update();
+        await().until(() -> Files.exists(path));
+
+        // A restored cache routes without fetching.
+        MetadataCache restored = new MetadataCache(ADDRS, rpc -> {
+            throw new AssertionError("unexpected fetch");
+        });
+        restored.restore(new MetadataSnapshot(path, ADDRS).load());
+        assertEquals("localhost:9293", restored.getAddr("foo", 1, false));
+        cache.close();
+    }
+
+}
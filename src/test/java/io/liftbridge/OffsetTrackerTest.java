@@ -0,0 +1,44 @@
+package io.liftbridge;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class OffsetTrackerTest {
+
+    @Test
+    public void testCompletedOffset() {
+        OffsetTracker tracker = new OffsetTracker();
+        assertEquals(-1, tracker.getCompletedOffset());
+
+        OffsetTracker.Entry e0 = tracker.track(0);
+        OffsetTracker.Entry e1 = tracker.track(1);
+        OffsetTracker.Entry e2 = tracker.track(2);
+
+        tracker.complete(e1);
+        assertEquals(-1, tracker.getCompletedOffset());
+
+        tracker.complete(e0);
+        assertEquals(1, tracker.getCompletedOffset());
+
+        tracker.complete(e2);
+        assertEquals(2, tracker.getCompletedOffset());
+    }
+
+    @Test
+    public void testCompletedOffsetWithGaps() {
+        OffsetTracker tracker = new OffsetTracker();
+        // Offsets 1 to 4 were removed by compaction.
+        OffsetTracker.Entry e0 = tracker.track(0);
+        OffsetTracker.Entry e5 = tracker.track(5);
+        OffsetTracker.Entry e9 = tracker.track(9);
+
+        tracker.complete(e5);
+        tracker.complete(e0);
+        assertEquals(5, tracker.getCompletedOffset());
+
+        tracker.complete(e9);
+        assertEquals(9, tracker.getCompletedOffset());
+    }
+
+}
@@ -0,0 +1,121 @@
+package io.liftbridge;
+
+import io.grpc.stub.ClientCallStreamObserver;
+import io.liftbridge.exceptions.LiftbridgeException;
+import io.liftbridge.exceptions.StreamDeletedException;
+import io.liftbridge.proto.Api;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class PollingSubscriptionTest {
+
+    @SuppressWarnings("unchecked")
+    private static ClientCallStreamObserver<Api.SubscribeRequest> mockCall() {
+        return mock(ClientCallStreamObserver.class);
+    }
+
+    private static Message message(long offset) {
+        return Message.fromProto(Api.Message.newBuilder().setOffset(offset).build());
+    }
+
+    @Test
+    public void testPollRequestsRoomInBuffer() throws InterruptedException, LiftbridgeException {
+        ClientCallStreamObserver<Api.SubscribeRequest> call = mockCall();
+        PollingSubscription polling = new PollingSubscription(8, "foo", null);
+        polling.flowController().start(call);
+        polling.flowController().handshake();
+
+        verify(call).request(8);
+
+        for (int i = 0; i < 8; i++) {
+            polling.handler().onMessage(message(i));
+        }
+        List<Message> msgs = polling.poll(0, MILLISECONDS);
+
+        assertEquals(8, msgs.size());
+        for (int i = 0; i < 8; i++) {
+            assertEquals(i, msgs.get(i).getOffset());
+        }
+        verify(call, times(2)).request(8);
+
+        polling.handler().onMessage(message(8));
+        assertEquals(1, polling.poll(0, MILLISECONDS).size());
+
+        // Less than a quarter of the buffer was freed, so nothing more is requested yet.
+        verify(call, times(2)).request(anyInt());
+    }
+
+    @Test
+    public void testPollWaitsForMessages() throws Exception {
+        PollingSubscription polling = new PollingSubscription(4, "foo", null);
+        polling.flowController().start(mockCall());
+        polling.flowController().handshake();
+
+        assertTrue(polling.poll(10, MILLISECONDS).isEmpty());
+
+        CompletableFuture<List<Message>> msgs = CompletableFuture.supplyAsync(() -> {
+            try {
+                return polling.poll(5, SECONDS);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(50);
+        polling.handler().onMessage(message(0));
+
+        assertEquals(1, msgs.get(1, TimeUnit.SECONDS).size());
+    }
+
+    @Test
+    public void testPollNeverMissesWakeUp() throws Exception {
+        PollingSubscription polling = new PollingSubscription(4, "foo", null);
+        polling.flowController().start(mockCall());
+        polling.flowController().handshake();
+        int rounds = 20000;
+        AtomicInteger polled = new AtomicInteger();
+
+        // Each message is added while the poller is about to park, and a missed wakeup costs a 10 second poll.
+        CompletableFuture<Void> poller = CompletableFuture.runAsync(() -> {
+            try {
+                while (polled.get() < rounds) {
+                    polled.addAndGet(polling.poll(10, SECONDS).size());
+                }
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        for (int i = 0; i < rounds; i++) {
+            while (polled.get() < i) {
+                Thread.yield();
+            }
+            polling.handler().onMessage(message(i));
+        }
+        poller.get(5, SECONDS);
+    }
+
+    @Test
+    public void testPollError() throws InterruptedException, LiftbridgeException {
+        PollingSubscription polling = new PollingSubscription(4, "foo", null);
+        polling.flowController().start(mockCall());
+        polling.flowController().handshake();
+        polling.handler().onMessage(message(0));
+        polling.handler().onError(new StreamDeletedException("stream was deleted", null));
+
+        assertEquals(1, polling.poll(0, MILLISECONDS).size());
+        try {
+            polling.poll(0, MILLISECONDS);
+            fail("Expected StreamDeletedException");
+        } catch (StreamDeletedException e) {
+        }
+    }
+
+}
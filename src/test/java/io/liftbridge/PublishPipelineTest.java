@@ -0,0 +1,73 @@
+package io.liftbridge;
+
+import io.liftbridge.exceptions.DeadlineExceededException;
+import io.liftbridge.exceptions.NoSuchStreamException;
+import io.liftbridge.exceptions.StreamExistsException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static java.util.concurrent.TimeUnit.*;
+import static org.junit.Assert.*;
+
+public class PublishPipelineTest extends BaseClientTest {
+
+    @Before
+    public void setupStreams() throws StreamExistsException {
+        client.createStream(streamName, new StreamOptions());
+    }
+
+    @After
+    public void teardownStreams() throws NoSuchStreamException {
+        client.deleteStream(streamName);
+    }
+
+    @Test
+    public void testPublishWindow() throws InterruptedException, ExecutionException {
+        PublishPipeline pipeline = new PublishPipeline(client, 8);
+        MessageOptions msgOpts = new MessageOptions().setAckDeadline(1, SECONDS);
+
+        List<CompletableFuture<Ack>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            byte[] payload = ByteBuffer.allocate(4).putInt(i).array();
+            futures.add(pipeline.publish(streamName, payload, msgOpts));
+            assertTrue("Window is respected", pipeline.getInFlight() <= 8);
+        }
+
+        Set<String> correlationIds = new HashSet<>();
+        Set<Long> offsets = new HashSet<>();
+        for (CompletableFuture<Ack> future : futures) {
+            Ack ack = future.get();
+            correlationIds.add(ack.getCorrelationId());
+            offsets.add(ack.getOffset());
+        }
+        assertEquals("Each message was assigned a correlation id", 100, correlationIds.size());
+        assertEquals("Every message got its own ack", 100, offsets.size());
+
+        pipeline.close();
+        assertEquals(0, pipeline.getInFlight());
+    }
+
+    @Test
+    public void testPublishDeadlineExceeded() throws InterruptedException {
+        PublishPipeline pipeline = new PublishPipeline(client, 8);
+        MessageOptions msgOpts = new MessageOptions().setAckDeadline(1, NANOSECONDS);
+        try {
+            pipeline.publish(streamName, null, msgOpts).get();
+            fail("Expected deadline to be exceeded");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof DeadlineExceededException);
+        }
+        assertEquals("Failed request released its slot", 0, pipeline.getInFlight());
+        pipeline.close();
+    }
+
+}
@@ -0,0 +1,61 @@
+package io.liftbridge;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+
+public class RoundRobinPartitionerTest extends BasePartitionerTest {
+
+    @Test
+    public void testPartition() {
+        RoundRobinPartitioner partitioner = new RoundRobinPartitioner();
+        Metadata metadata = metadataWithPartitions("foo", 3);
+        MessageOptions opts = new MessageOptions();
+
+        for (int i = 0; i < 9; i++) {
+            assertEquals(i % 3, partitioner.partition("foo", "key".getBytes(), null, metadata, opts));
+        }
+    }
+
+    @Test
+    public void testPartitionUnknownStream() {
+        RoundRobinPartitioner partitioner = new RoundRobinPartitioner();
+        Metadata metadata = metadataWithPartitions("foo", 3);
+        MessageOptions opts = new MessageOptions();
+
+        assertEquals(0, partitioner.partition("bar", null, null, metadata, opts));
+        assertEquals(0, partitioner.partition("bar", null, null, metadata, opts));
+        assertEquals(0, partitioner.partition("foo", null, null, opts));
+    }
+
+    @Test
+    public void testPartitionConcurrent() throws InterruptedException {
+        RoundRobinPartitioner partitioner = new RoundRobinPartitioner();
+        Metadata metadata = metadataWithPartitions("foo", 4);
+        MessageOptions opts = new MessageOptions();
+        AtomicIntegerArray counts = new AtomicIntegerArray(4);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    counts.incrementAndGet(partitioner.partition("foo", null, null, metadata, opts));
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals("Messages are spread evenly", 2000, counts.get(i));
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+package io.liftbridge;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RoutingTableTest {
+
+    private final BrokerInfo a = new BrokerInfo("a", "localhost", 9292);
+    private final BrokerInfo b = new BrokerInfo("b", "localhost", 9293);
+    private final BrokerInfo c = new BrokerInfo("c", "localhost", 9294);
+
+    private RoutingTable routingTable() {
+        Map<String, BrokerInfo> brokers = new HashMap<>();
+        brokers.put("a", a);
+        brokers.put("b", b);
+        brokers.put("c", c);
+
+        Map<Integer, PartitionInfo> partitions = new HashMap<>();
+        partitions.put(0, new PartitionInfo(0, a, new HashSet<>(Arrays.asList(a, b, c)),
+                new HashSet<>(Arrays.asList(a, b))));
+        // Partition 1 is missing, partition 2 has an empty ISR.
+        partitions.put(2, new PartitionInfo(2, c, new HashSet<>(Arrays.asList(a, b, c)), new HashSet<>()));
+        Map<String, StreamInfo> streams = new HashMap<>();
+        streams.put("foo", new StreamInfo("foo", "foo", partitions));
+
+        return RoutingTable.build(new Metadata(brokers, streams), Collections.singleton("localhost:4222"));
+    }
+
+    @Test
+    public void testGetAddrLeader() {
+        RoutingTable routes = routingTable();
+        assertEquals("localhost:9292", routes.getAddr("foo", 0, false));
+        assertEquals("localhost:9294", routes.getAddr("foo", 2, false));
+    }
+
+    @Test
+    public void testGetAddrIsrReplica() {
+        RoutingTable routes = routingTable();
+        for (int i = 0; i < 100; i++) {
+            String addr = routes.getAddr("foo", 0, true);
+            assertTrue(addr, addr.equals("localhost:9292") || addr.equals("localhost:9293"));
+        }
+        // An empty ISR falls back to the leader.
+        assertEquals("localhost:9294", routes.getAddr("foo", 2, true));
+    }
+
+    @Test
+    public void testGetAddrUnknown() {
+        RoutingTable routes = routingTable();
+        assertNull(routes.getAddr("bar", 0, false));
+        assertNull(routes.getAddr("foo", 1, false));
+        assertNull(routes.getAddr("foo", 1, true));
+        assertNull(routes.getAddr("foo", 3, false));
+        assertNull(routes.getAddr("foo", -1, false));
+    }
+
+    @Test
+    public void testGetAddrs() {
+        RoutingTable routes = routingTable();
+        assertEquals(new HashSet<>(Arrays.asList("localhost:4222", "localhost:9292", "localhost:9293",
+                "localhost:9294")), routes.getAddrs());
+    }
+
+}
@@ -0,0 +1,90 @@
+package io.liftbridge;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.awaitility.Awaitility.await;
+import static org.junit.Assert.*;
+
+public class SerializedExecutorTest {
+
+    private ExecutorService pool;
+
+    @Before
+    public void setupPool() {
+        pool = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void tearDownPool() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void testRunsInOrderOneAtATime() {
+        SerializedExecutor executor = new SerializedExecutor(pool);
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        for (int i = 0; i < 1000; i++) {
+            int n = i;
+            executor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                order.add(n);
+                running.decrementAndGet();
+            });
+        }
+
+        await().atMost(5, SECONDS).until(() -> order.size() == 1000);
+        assertEquals(1, maxRunning.get());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void testExecutorsRunInParallel() throws InterruptedException {
+        SerializedExecutor first = new SerializedExecutor(pool);
+        SerializedExecutor second = new SerializedExecutor(pool);
+        Object lock = new Object();
+        AtomicInteger done = new AtomicInteger();
+
+        synchronized (lock) {
+            // Blocks first until the lock is released, which second does not wait for.
+            first.execute(() -> {
+                synchronized (lock) {
+                    done.incrementAndGet();
+                }
+            });
+            second.execute(done::incrementAndGet);
+            await().atMost(5, SECONDS).until(() -> done.get() == 1);
+        }
+
+        await().atMost(5, SECONDS).until(() -> done.get() == 2);
+    }
+
+    @Test
+    public void testFailedTaskDoesNotStopOthers() {
+        SerializedExecutor executor = new SerializedExecutor(pool);
+        AtomicInteger done = new AtomicInteger();
+
+        executor.execute(() -> {
+            throw new IllegalStateException("handler failed");
+        });
+        executor.execute(done::incrementAndGet);
+
+        // The failure is reported to the uncaught exception handler.
+        await().dontCatchUncaughtExceptions().atMost(5, SECONDS).until(() -> done.get() == 1);
+    }
+
+}
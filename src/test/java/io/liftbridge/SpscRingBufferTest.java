@@ -0,0 +1,74 @@
+package io.liftbridge;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SpscRingBufferTest {
+
+    @Test
+    public void testCapacityRoundedUp() {
+        assertEquals(1, new SpscRingBuffer<Integer>(1).capacity());
+        assertEquals(8, new SpscRingBuffer<Integer>(5).capacity());
+        assertEquals(8, new SpscRingBuffer<Integer>(8).capacity());
+    }
+
+    @Test
+    public void testOfferDrain() {
+        SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        assertEquals(4, buffer.size());
+
+        List<Integer> out = new ArrayList<>();
+        assertEquals(3, buffer.drainTo(out, 3));
+        assertEquals(Arrays.asList(0, 1, 2), out);
+
+        // Wraps around the end of the array.
+        assertTrue(buffer.offer(4));
+        assertTrue(buffer.offer(5));
+        assertTrue(buffer.offer(6));
+        assertFalse(buffer.offer(7));
+
+        out.clear();
+        assertEquals(4, buffer.drainTo(out, Integer.MAX_VALUE));
+        assertEquals(Arrays.asList(3, 4, 5, 6), out);
+        assertTrue(buffer.isEmpty());
+        assertEquals(0, buffer.drainTo(out, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testConcurrentProducerConsumer() throws InterruptedException {
+        final int count = 1_000_000;
+        final SpscRingBuffer<Integer> buffer = new SpscRingBuffer<>(64);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < count; i++) {
+                while (!buffer.offer(i)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+
+        List<Integer> out = new ArrayList<>();
+        int expected = 0;
+        while (expected < count) {
+            out.clear();
+            if (buffer.drainTo(out, Integer.MAX_VALUE) == 0) {
+                Thread.yield();
+            }
+            for (int i : out) {
+                assertEquals(expected++, i);
+            }
+        }
+        producer.join();
+        assertTrue(buffer.isEmpty());
+    }
+
+}
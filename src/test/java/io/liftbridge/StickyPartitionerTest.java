@@ -0,0 +1,63 @@
+package io.liftbridge;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class StickyPartitionerTest extends BasePartitionerTest {
+
+    @Test
+    public void testPartitionSticksForBatch() {
+        StickyPartitioner partitioner = new StickyPartitioner(5);
+        Metadata metadata = metadataWithPartitions("foo", 3);
+        MessageOptions opts = new MessageOptions();
+
+        int first = partitioner.partition("foo", null, null, metadata, opts);
+        for (int i = 1; i < 5; i++) {
+            assertEquals(first, partitioner.partition("foo", null, null, metadata, opts));
+        }
+        int second = partitioner.partition("foo", null, null, metadata, opts);
+        assertEquals("Moves on to the next partition", (first + 1) % 3, second);
+    }
+
+    @Test
+    public void testOnNewBatch() {
+        StickyPartitioner partitioner = new StickyPartitioner(100);
+        Metadata metadata = metadataWithPartitions("foo", 3);
+        MessageOptions opts = new MessageOptions();
+
+        int first = partitioner.partition("foo", null, null, metadata, opts);
+        partitioner.onNewBatch("foo", (first + 1) % 3);
+        assertEquals("Batch for another partition is ignored",
+                first, partitioner.partition("foo", null, null, metadata, opts));
+
+        partitioner.onNewBatch("foo", first);
+        int second = partitioner.partition("foo", null, null, metadata, opts);
+        assertNotEquals(first, second);
+
+        partitioner.onNewBatch("bar", 0);
+    }
+
+    @Test
+    public void testPartitionKeyed() {
+        StickyPartitioner partitioner = new StickyPartitioner(5);
+        Metadata metadata = metadataWithPartitions("foo", 32);
+        MessageOptions opts = new MessageOptions();
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(8, partitioner.partition("foo", "foobar".getBytes(), null, metadata, opts));
+        }
+    }
+
+    @Test
+    public void testPartitionUnknownStream() {
+        StickyPartitioner partitioner = new StickyPartitioner();
+        Metadata metadata = metadataWithPartitions("foo", 3);
+        MessageOptions opts = new MessageOptions();
+
+        assertEquals(0, partitioner.partition("bar", null, null, metadata, opts));
+        assertEquals(0, partitioner.partition("foo", null, null, opts));
+    }
+
+}
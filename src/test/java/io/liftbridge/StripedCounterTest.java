@@ -0,0 +1,75 @@
+package io.liftbridge;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StripedCounterTest {
+
+    @Test
+    public void testGetAndIncrement() {
+        AtomicLong start = new AtomicLong(10);
+        StripedCounter counter = new StripedCounter(4, () -> start.getAndAdd(10));
+
+        int cell = counter.cell();
+        long first = counter.getAndIncrement();
+        assertEquals(10 * (cell + 1), first);
+        for (int i = 1; i < 5; i++) {
+            assertEquals(first + i, counter.getAndIncrement());
+        }
+        assertEquals(first + 5, counter.get(cell));
+        for (int i = 0; i < 4; i++) {
+            if (i != cell) {
+                assertEquals("Other cells are untouched", 10 * (i + 1), counter.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testCompareAndSet() {
+        StripedCounter counter = new StripedCounter(2, () -> 0);
+
+        assertTrue(counter.compareAndSet(1, 0, 5));
+        assertFalse(counter.compareAndSet(1, 0, 6));
+        assertEquals(5, counter.get(1));
+        assertEquals(0, counter.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCellsPowerOfTwo() {
+        new StripedCounter(3, () -> 0);
+    }
+
+    @Test
+    public void testConcurrent() throws InterruptedException {
+        StripedCounter counter = new StripedCounter(4, () -> 0);
+        AtomicIntegerArray threadsPerCell = new AtomicIntegerArray(4);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                threadsPerCell.incrementAndGet(counter.cell());
+                for (int i = 0; i < 1000; i++) {
+                    counter.getAndIncrement();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals("No increment is lost", 1000 * threadsPerCell.get(i), counter.get(i));
+        }
+    }
+
+}
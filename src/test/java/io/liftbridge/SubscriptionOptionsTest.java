@@ -0,0 +1,35 @@
+package io.liftbridge;
+
+import io.liftbridge.proto.Api;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class SubscriptionOptionsTest {
+
+    @Test
+    public void testForPartition() {
+        SubscriptionOptions opts = new SubscriptionOptions().startAtEarliestReceived().setPrefetchCount(10);
+
+        SubscriptionOptions copy = opts.forPartition(3);
+        Api.SubscribeRequest req = copy.toProto("foo");
+
+        assertEquals(3, req.getPartition());
+        assertEquals(Api.StartPosition.EARLIEST, req.getStartPosition());
+        assertEquals(10, copy.getPrefetchCount());
+        assertEquals("Original is unchanged", 0, opts.getPartition());
+    }
+
+    @Test
+    public void testResumeFromOffset() {
+        SubscriptionOptions opts = new SubscriptionOptions().setPartition(2);
+
+        Api.SubscribeRequest req = opts.forPartition(opts.getPartition()).startAtOffset(43).toProto("foo");
+
+        assertEquals(2, req.getPartition());
+        assertEquals(Api.StartPosition.OFFSET, req.getStartPosition());
+        assertEquals(43, req.getStartOffset());
+        assertEquals("Original is unchanged", Api.StartPosition.NEW_ONLY, opts.toProto("foo").getStartPosition());
+    }
+
+}